@@ -2,6 +2,9 @@ import operators.OperationResult;
 import operators.Operator;
 import operators.Utils;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.util.*;
 import java.util.stream.Stream;
 
@@ -9,7 +12,7 @@ import static operators.Operators.*;
 
 
 public class ArithmeticCombinations {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         List<Double> numbers = Stream.of(2, 3, 4, 5, 7, 8, 9, 44, 55).map(Integer::doubleValue).toList();
 
         long start = System.currentTimeMillis();
@@ -27,9 +30,11 @@ public class ArithmeticCombinations {
 
         System.out.printf("Combinations found: %d%n%n", result.size());
 
+        ResultSink resultSink = new TextResultSink(new BufferedWriter(new OutputStreamWriter(System.out)));
         for (OperationResult operationResult : result) {
-            System.out.println(operationResult);
+            resultSink.accept(operationResult);
         }
+        resultSink.flush();
 
         System.out.printf("%nRan in %dms", end - start);
 
@@ -40,25 +45,167 @@ public class ArithmeticCombinations {
         return parenthesesAllowed || !operationResult.containsParentheses();
     }
 
+    /**
+     * @return an empty list of expressions for every length up to {@code numsAmount}, indexed by length
+     */
+    static List<List<OperationResult>> emptyByLength(int numsAmount) {
+        List<List<OperationResult>> result = new ArrayList<>();
+        for (int length = 0; length <= numsAmount; length++) {
+            result.add(new ArrayList<>());
+        }
+        return result;
+    }
+
+    /**
+     * Adds every candidate made of {@code base} and {@code other} to {@code candidates}: both orders with every operator,
+     * except expressions of all numbers that miss the target and, unless allowed, expressions that need parentheses.
+     * {@link PipelineSearch} generates its candidates with this too, so that both searches combine the same way.
+     */
+    static void combine(List<Operator> operators, OperationResult base, OperationResult other, int numsAmount, double target, boolean parenthesesAllowed, boolean reUseAllowed, List<OperationResult> candidates) {
+        if (!reUseAllowed && base.sharesOriginalsWith(other)) return;
+        for (Operator operator : operators) {
+            for (OperationResult newResult : List.of(base.apply(operator, other), other.apply(operator, base))) {
+                if (newResult.length() == numsAmount && !Utils.doubleEquals(newResult.resultValue, target))
+                    continue;
+                if (!parenthesesCheck(newResult, parenthesesAllowed))
+                    continue;
+                candidates.add(newResult);
+            }
+        }
+    }
+
+    /**
+     * @return the expressions of all numbers that hit the target
+     */
+    static List<OperationResult> solutions(List<List<OperationResult>> argumentsByLength, int numsAmount, double target) {
+        return argumentsByLength.get(numsAmount).stream().filter(or -> Utils.doubleEquals(or.resultValue, target)).toList();
+    }
+
+    /**
+     * Every shard builds all expressions shorter than one number short of the full length, which are cheap.
+     * Expressions one number short are assigned to shards by the original numbers they use, and full-length expressions
+     * built from one of them go to the same shard, so every shard only builds its own part of the two biggest levels.
+     * Other full-length expressions are assigned by all the original numbers they use. The assignment only depends
+     * on the numbers, so it's the same in every process. Equivalent solutions built in different shards are
+     * deduplicated when the shards are merged.
+     *
+     * @return the shard that combines {@code base} with {@code other}, or -1 if every shard does
+     */
+    static int shardOf(int shardCount, int numsAmount, OperationResult base, OperationResult other) {
+        int length = base.length() + other.length();
+        if (length < numsAmount - 1) return -1;
+        long digest;
+        if (length == numsAmount && base.length() == numsAmount - 1) {
+            digest = base.usedOriginalsDigest();
+        } else if (length == numsAmount && other.length() == numsAmount - 1) {
+            digest = other.usedOriginalsDigest();
+        } else {
+            digest = base.usedOriginalsDigest() + other.usedOriginalsDigest();
+        }
+        return (int) Math.floorMod(digest, (long) shardCount);
+    }
+
     public static Collection<OperationResult> operationCombinations(List<Operator> operators, List<Double> numbers, int numsAmount, double target, boolean parenthesesAllowed, boolean reUseAllowed) {
-        HashSet<OperationResult> potentialArguments = new HashSet<>(numbers.stream().map(OperationResult::new).toList());
-
-        for (int length = 1; length < numsAmount; length++) {
-            int lengthForLambda = length;
-            for (OperationResult base : potentialArguments.stream().filter(or -> or.length() == lengthForLambda).toList()) {
-                for (OperationResult other : potentialArguments.stream().filter(or -> or.length() <= numsAmount - lengthForLambda && (reUseAllowed || Collections.disjoint(base.usedOriginals(), or.usedOriginals()))).toList()) {
-                    for (Operator operator : operators) {
-                        for (OperationResult newResult : List.of(base.apply(operator, other), other.apply(operator, base))) {
-                            if (newResult.length() == numsAmount && !Utils.doubleEquals(newResult.resultValue, target))
-                                continue;
-                            if (potentialArguments.stream().noneMatch(newResult::isEquivalent) && parenthesesCheck(newResult, parenthesesAllowed))
-                                potentialArguments.add(newResult);
+        double[] values = numbers.stream().mapToDouble(Double::doubleValue).toArray();
+        return operationCombinations(operators, values, numsAmount, target, parenthesesAllowed, reUseAllowed);
+    }
+
+    public static Collection<OperationResult> operationCombinations(List<Operator> operators, double[] numbers, int numsAmount, double target, boolean parenthesesAllowed, boolean reUseAllowed) {
+        return operationCombinations(operators, numbers, numsAmount, target, parenthesesAllowed, reUseAllowed, SearchOptions.defaults()).solutions();
+    }
+
+    /**
+     * Builds expressions level by level and keeps only the first of every equivalence class, in the order it builds them.
+     * A solution equivalent to an expression of fewer numbers, such as {@code 7 * 2 * 1} or, with reuse,
+     * {@code 7 * (2 + 2 - 2)} for {@code 7 * 2}, is only left out if the shorter expression was built first, so this
+     * search can return a few more solutions than {@link DepthFirstSearch} and {@link ShapeTemplates}, which always
+     * leave them out. With both 1 and -1 in the input it can also miss some of theirs, e.g. {@code (3 - -1) * (1 + 5)},
+     * because it keeps only one of {@code 3 - -1} and {@code 3 + 1}.
+     *
+     * @param options sharding, cancellation, progress reporting and checkpointing, see {@link SearchOptions}
+     */
+    public static SearchResult operationCombinations(List<Operator> operators, double[] numbers, int numsAmount, double target, boolean parenthesesAllowed, boolean reUseAllowed, SearchOptions options) {
+        int shardIndex = options.shardIndex();
+        int shardCount = options.shardCount();
+        CancellationToken cancellationToken = options.cancellationToken();
+        ProgressListener progressListener = options.progressListener();
+        SearchCheckpoint checkpoint = options.checkpoint();
+        if (numsAmount < 1) return new SearchResult(List.of(), true);
+
+        byte[] parameters = SearchCheckpoint.parameters(operators, numbers, numsAmount, target, parenthesesAllowed, reUseAllowed, shardIndex, shardCount);
+        SearchCheckpoint.State savedState = checkpoint.load(parameters);
+
+        // Expressions indexed by their length, so partners of a given length don't have to be searched for
+        List<List<OperationResult>> argumentsByLength;
+        // Expressions are deduplicated by the 64-bit digest of their fingerprint
+        ConcurrentKeyIndex canonicalKeys = new ConcurrentKeyIndex(1 << 16);
+        SearchCheckpoint.Cursor start = new SearchCheckpoint.Cursor(1, 0, 1, 0);
+        int[] partnerCounts = new int[numsAmount + 1];
+        if (Objects.nonNull(savedState)) {
+            argumentsByLength = savedState.argumentsByLength();
+            for (List<OperationResult> arguments : argumentsByLength) {
+                for (OperationResult argument : arguments) {
+                    canonicalKeys = canonicalKeys.withRoomForOneMore();
+                    canonicalKeys.add(argument.getFingerprint().toLong());
+                }
+            }
+            start = savedState.cursor();
+            partnerCounts = savedState.partnerCounts();
+        } else {
+            argumentsByLength = emptyByLength(numsAmount);
+            for (double number : numbers) {
+                OperationResult original = new OperationResult(number);
+                argumentsByLength.get(1).add(original);
+                canonicalKeys = canonicalKeys.withRoomForOneMore();
+                canonicalKeys.add(original.getFingerprint().toLong());
+            }
+        }
+        List<OperationResult> candidates = new ArrayList<>();
+        boolean complete = true;
+
+        levels:
+        for (int length = start.level(); length < numsAmount; length++) {
+            List<OperationResult> bases = argumentsByLength.get(length);
+            int maxPartnerLength = numsAmount - length;
+            for (int baseIndex = length == start.level() ? start.baseIndex() : 0; baseIndex < bases.size(); baseIndex++) {
+                OperationResult base = bases.get(baseIndex);
+                progressListener.onProgress(length, baseIndex, bases.size());
+                // A resumed base continues with the partners it had before, which were saved along with it
+                boolean resumed = Objects.nonNull(savedState) && length == start.level() && baseIndex == start.baseIndex();
+                if (!resumed) {
+                    // Only partners that existed before combining this base, like a snapshot
+                    for (int otherLength = 1; otherLength <= maxPartnerLength; otherLength++) {
+                        partnerCounts[otherLength] = argumentsByLength.get(otherLength).size();
+                    }
+                }
+                for (int otherLength = resumed ? start.partnerLength() : 1; otherLength <= maxPartnerLength; otherLength++) {
+                    List<OperationResult> others = argumentsByLength.get(otherLength);
+                    for (int otherIndex = resumed && otherLength == start.partnerLength() ? start.partnerIndex() : 0; otherIndex < partnerCounts[otherLength]; otherIndex++) {
+                        // Not saved once more when cancelled, which would take long past the deadline
+                        if (cancellationToken.isCancelled()) {
+                            complete = false;
+                            break levels;
+                        }
+                        checkpoint.saveIfDue(parameters, length, baseIndex, otherLength, otherIndex, partnerCounts, argumentsByLength, cancellationToken);
+                        OperationResult other = others.get(otherIndex);
+                        if (shardCount > 1 && length + otherLength >= numsAmount - 1) {
+                            int shard = shardOf(shardCount, numsAmount, base, other);
+                            if (shard >= 0 && shard != shardIndex) continue;
+                        }
+                        candidates.clear();
+                        combine(operators, base, other, numsAmount, target, parenthesesAllowed, reUseAllowed, candidates);
+                        for (OperationResult candidate : candidates) {
+                            canonicalKeys = canonicalKeys.withRoomForOneMore();
+                            if (canonicalKeys.add(candidate.getFingerprint().toLong()))
+                                argumentsByLength.get(candidate.length()).add(candidate);
                         }
                     }
                 }
             }
+            progressListener.onProgress(length, bases.size(), bases.size());
         }
+        if (complete) checkpoint.delete();
 
-        return potentialArguments.stream().filter(or -> or.length() == numsAmount && Utils.doubleEquals(or.resultValue, target)).toList();
+        return new SearchResult(solutions(argumentsByLength, numsAmount, target), complete);
     }
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+import operators.OperationResult;
+import operators.Operators;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reads solutions written by {@link BinaryResultSink}.
+ */
+public class BinaryResultReader implements Closeable {
+    private final DataInputStream inputStream;
+    private final ByteBuffer buffer = ByteBuffer.allocate(0xFFFF);
+    private final Deque<OperationResult> stack = new ArrayDeque<>();
+
+    public BinaryResultReader(InputStream inputStream) throws IOException {
+        this.inputStream = new DataInputStream(inputStream);
+        int magic = this.inputStream.readInt();
+        if (magic != BinaryResultSink.MAGIC)
+            throw new IOException(String.format("Not a binary result stream, got header %08x", magic));
+    }
+
+    /**
+     * @return the next solution, or null at the end of the stream
+     */
+    public OperationResult read() throws IOException {
+        int high = inputStream.read();
+        if (high < 0) return null;
+        int recordLength = (high << 8) | inputStream.readUnsignedByte();
+
+        buffer.clear().limit(recordLength);
+        inputStream.readFully(buffer.array(), 0, recordLength);
+
+        stack.clear();
+        while (buffer.hasRemaining()) {
+            byte node = buffer.get();
+            if (node == BinaryResultSink.LEAF) {
+                if (buffer.remaining() < Double.BYTES) throw new EOFException("Record ends in the middle of a number");
+                stack.push(new OperationResult(buffer.getDouble()));
+            } else {
+                if (stack.size() < 2) throw new IOException("Operator without two operands in record");
+                OperationResult right = stack.pop();
+                OperationResult left = stack.pop();
+                stack.push(left.apply(Operators.fromOrdinal(node), right));
+            }
+        }
+        if (stack.size() != 1) throw new IOException(String.format("Record left %d expressions instead of 1", stack.size()));
+        return stack.pop();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
@@ -0,0 +1,65 @@
+import operators.OperationResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes solutions in postfix order, readable with {@link BinaryResultReader}.
+ * <p>
+ * The stream starts with {@link #MAGIC}, followed by one record per solution: an unsigned short byte length,
+ * then the nodes of the expression in postfix order. An original number is {@link #LEAF} followed by its 8-byte value,
+ * an operator is the single byte of its {@link operators.Operator#ordinal}.
+ */
+public class BinaryResultSink implements ResultSink {
+    static final int MAGIC = 0x41435231;  // "ACR1"
+    static final byte LEAF = (byte) 0xFF;
+    private static final int MAX_RECORD_LENGTH = 0xFFFF;
+
+    private final OutputStream outputStream;
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+    public BinaryResultSink(OutputStream outputStream) throws IOException {
+        this.outputStream = outputStream;
+        buffer.putInt(MAGIC);
+        outputStream.write(buffer.array(), 0, buffer.position());
+    }
+
+    @Override
+    public void accept(OperationResult operationResult) throws IOException {
+        int recordLength = encodedLength(operationResult);
+        if (recordLength > MAX_RECORD_LENGTH)
+            throw new IllegalArgumentException(String.format("Expression is too long to encode: %d bytes", recordLength));
+        if (buffer.capacity() < Short.BYTES + recordLength) buffer = ByteBuffer.allocate(Short.BYTES + recordLength);
+
+        buffer.clear();
+        buffer.putShort((short) recordLength);
+        encode(operationResult);
+        outputStream.write(buffer.array(), 0, buffer.position());
+    }
+
+    private static int encodedLength(OperationResult operationResult) {
+        if (operationResult.isFirst()) return 1 + Double.BYTES;
+        return encodedLength(operationResult.left) + encodedLength(operationResult.right) + 1;
+    }
+
+    private void encode(OperationResult operationResult) {
+        if (operationResult.isFirst()) {
+            buffer.put(LEAF).putDouble(operationResult.resultValue);
+            return;
+        }
+        encode(operationResult.left);
+        encode(operationResult.right);
+        buffer.put((byte) operationResult.operator.ordinal);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+}
@@ -0,0 +1,59 @@
+import java.time.Duration;
+
+/**
+ * Cooperative cancellation for {@link ArithmeticCombinations#operationCombinations}.
+ * The search checks the token between candidate pairs and stops once it has been cancelled or its deadline has passed.
+ */
+public class CancellationToken {
+    private static final CancellationToken NONE = new CancellationToken(0, false, false);
+
+    private final long deadlineNanos;
+    private final boolean hasDeadline;
+    private final boolean cancellable;
+    private volatile boolean cancelled = false;
+
+    private CancellationToken(long deadlineNanos, boolean hasDeadline, boolean cancellable) {
+        this.deadlineNanos = deadlineNanos;
+        this.hasDeadline = hasDeadline;
+        this.cancellable = cancellable;
+    }
+
+    /**
+     * @return the shared token for searches that always run to the end, it can't be cancelled
+     */
+    public static CancellationToken none() {
+        return NONE;
+    }
+
+    /**
+     * @return a new token without a deadline that is only cancelled by {@link #cancel}
+     */
+    public static CancellationToken create() {
+        return new CancellationToken(0, false, true);
+    }
+
+    public static CancellationToken withTimeout(Duration timeout) {
+        return new CancellationToken(System.nanoTime() + timeout.toNanos(), true, true);
+    }
+
+    /**
+     * @throws UnsupportedOperationException for {@link #none()}
+     */
+    public void cancel() {
+        if (!cancellable) throw new UnsupportedOperationException("CancellationToken.none() can't be cancelled, use create() instead!");
+        cancelled = true;
+    }
+
+    /**
+     * @return nanoseconds left until the deadline, 0 once cancelled, or {@link Long#MAX_VALUE} without a deadline
+     */
+    public long remainingNanos() {
+        if (cancelled) return 0;
+        if (!hasDeadline) return Long.MAX_VALUE;
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (hasDeadline && System.nanoTime() - deadlineNanos >= 0);
+    }
+}
@@ -0,0 +1,136 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Set of 64-bit canonical keys, such as the digests of expression fingerprints.
+ * <p>
+ * The table lives off-heap in direct {@link ByteBuffer}s and uses open addressing with linear probing.
+ * Inserts claim a slot with a compare-and-set on its key, so any number of threads can insert at the same time
+ * without locks. The capacity is fixed, {@link #resized} makes a bigger copy but must not run concurrently with inserts.
+ * <p>
+ * A single buffer can't hold more than 2 GiB, so slots are addressed by a {@code long} and split over buffers of
+ * at most {@link #CHUNK_SLOTS} slots each. Key 0 marks an empty slot, so whether 0 itself is in the set is kept apart.
+ */
+public class ConcurrentKeyIndex {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final long EMPTY = 0;
+    private static final int CHUNK_BITS = 27;
+    private static final long CHUNK_SLOTS = 1L << CHUNK_BITS;
+    // 8 TiB of slots, far beyond any memory the table could get
+    private static final long MAX_CAPACITY = 1L << 40;
+
+    private final ByteBuffer[] chunks;
+    private final long capacity;
+    private final long mask;
+    private final AtomicBoolean containsZero = new AtomicBoolean();
+    private final AtomicLong size = new AtomicLong();
+
+    public ConcurrentKeyIndex(long minimumCapacity) {
+        if (minimumCapacity > MAX_CAPACITY)
+            throw new IllegalArgumentException(String.format("Capacity %d is more than the maximum of %d keys", minimumCapacity, MAX_CAPACITY));
+        capacity = Math.max(2, Long.highestOneBit(Math.max(1, minimumCapacity - 1)) << 1);
+        mask = capacity - 1;
+        long chunkSlots = Math.min(capacity, CHUNK_SLOTS);
+        chunks = new ByteBuffer[(int) (capacity / chunkSlots)];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            // Compare-and-set needs the slots aligned to 8 bytes
+            chunks[chunk] = ByteBuffer.allocateDirect((int) chunkSlots * Long.BYTES + Long.BYTES).alignedSlice(Long.BYTES);
+        }
+    }
+
+    private static long mix(long key) {
+        key = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+        return key ^ (key >>> 33);
+    }
+
+    private ByteBuffer chunkOf(long slot) {
+        return chunks[(int) (slot >>> CHUNK_BITS)];
+    }
+
+    private static int offsetOf(long slot) {
+        return (int) (slot & (CHUNK_SLOTS - 1)) * Long.BYTES;
+    }
+
+    /**
+     * @return true if {@code key} wasn't in the set yet and was added now
+     * @throws IllegalStateException if the table is full
+     */
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            if (!containsZero.compareAndSet(false, true)) return false;
+            size.incrementAndGet();
+            return true;
+        }
+        long slot = mix(key) & mask;
+        for (long probes = 0; probes < capacity; probes++) {
+            ByteBuffer chunk = chunkOf(slot);
+            int offset = offsetOf(slot);
+            long current = (long) LONGS.getAcquire(chunk, offset);
+            if (current == EMPTY) {
+                current = (long) LONGS.compareAndExchange(chunk, offset, EMPTY, key);
+                if (current == EMPTY) {
+                    size.incrementAndGet();
+                    return true;
+                }
+            }
+            if (current == key) return false;
+            slot = (slot + 1) & mask;
+        }
+        throw new IllegalStateException(String.format("Key index is full at %d keys", capacity));
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY) return containsZero.get();
+        long slot = mix(key) & mask;
+        for (long probes = 0; probes < capacity; probes++) {
+            long current = (long) LONGS.getAcquire(chunkOf(slot), offsetOf(slot));
+            if (current == EMPTY) return false;
+            if (current == key) return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return true once probing gets slow enough that the owner should switch to a {@link #resized} copy
+     */
+    public boolean isCrowded() {
+        return size() > capacity / 2;
+    }
+
+    /**
+     * The growth policy of every search: called before each insert, it grows the table fourfold once it's crowded.
+     * Must not be called while other threads are inserting.
+     *
+     * @return this index, or a {@link #resized} copy if this one is crowded
+     */
+    public ConcurrentKeyIndex withRoomForOneMore() {
+        if (!isCrowded()) return this;
+        return resized(capacity * 4);
+    }
+
+    /**
+     * Must not be called while other threads are inserting.
+     */
+    public ConcurrentKeyIndex resized(long minimumCapacity) {
+        ConcurrentKeyIndex result = new ConcurrentKeyIndex(Math.max(minimumCapacity, size() + 1));
+        if (containsZero.get()) result.add(EMPTY);
+        for (long slot = 0; slot < capacity; slot++) {
+            long key = (long) LONGS.getAcquire(chunkOf(slot), offsetOf(slot));
+            if (key != EMPTY) result.add(key);
+        }
+        return result;
+    }
+}
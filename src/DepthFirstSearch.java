@@ -0,0 +1,146 @@
+import operators.OperationResult;
+import operators.Operator;
+import operators.Utils;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Alternative to {@link ArithmeticCombinations#operationCombinations} that searches depth-first instead of level by level.
+ * <p>
+ * For every choice of numbers it repeatedly combines two of the remaining operands with each operator, recurses,
+ * and backtracks, keeping only primitive arrays proportional to the amount of numbers. Intermediate expressions are
+ * never stored, so memory doesn't grow with the size of the problem apart from the keys of the solutions,
+ * and solutions are reported as soon as they're found.
+ * <p>
+ * A solution equivalent to one of fewer numbers is always left out, so the searches for fewer numbers run first and
+ * only the keys of their solutions are kept. See
+ * {@link ArithmeticCombinations#operationCombinations(List, double[], int, double, boolean, boolean, SearchOptions)}
+ * for where its solutions can differ from the level-by-level search.
+ */
+public class DepthFirstSearch {
+    private final List<Operator> operators;
+    private final double target;
+    private final boolean parenthesesAllowed;
+    private final Consumer<OperationResult> solutionConsumer;
+    private final int numsAmount;
+
+    // values[depth] and nodes[depth] are the operands remaining at that depth, as values and as node ids
+    private final double[][] values;
+    private final int[][] nodes;
+    // Expression tree of the current candidate: ids below numsAmount are the chosen numbers, the rest are operations
+    private final double[] leafValues;
+    private final int[] nodeOperators;
+    private final int[] nodeLefts;
+    private final int[] nodeRights;
+    private ConcurrentKeyIndex solutionKeys;
+
+    private DepthFirstSearch(List<Operator> operators, int numsAmount, double target, boolean parenthesesAllowed, ConcurrentKeyIndex solutionKeys, Consumer<OperationResult> solutionConsumer) {
+        this.operators = operators;
+        this.numsAmount = numsAmount;
+        this.target = target;
+        this.parenthesesAllowed = parenthesesAllowed;
+        this.solutionKeys = solutionKeys;
+        this.solutionConsumer = solutionConsumer;
+        values = new double[numsAmount][numsAmount];
+        nodes = new int[numsAmount][numsAmount];
+        leafValues = new double[numsAmount];
+        nodeOperators = new int[2 * numsAmount - 1];
+        nodeLefts = new int[2 * numsAmount - 1];
+        nodeRights = new int[2 * numsAmount - 1];
+    }
+
+    public static Collection<OperationResult> operationCombinations(List<Operator> operators, double[] numbers, int numsAmount, double target, boolean parenthesesAllowed, boolean reUseAllowed) {
+        List<OperationResult> result = new ArrayList<>();
+        operationCombinations(operators, numbers, numsAmount, target, parenthesesAllowed, reUseAllowed, result::add);
+        return result;
+    }
+
+    /**
+     * Reports every solution to {@code solutionConsumer} as soon as it's found, one per equivalence class.
+     */
+    public static void operationCombinations(List<Operator> operators, double[] numbers, int numsAmount, double target, boolean parenthesesAllowed, boolean reUseAllowed, Consumer<OperationResult> solutionConsumer) {
+        if (numsAmount < 1) return;
+        // A number is only ever chosen more than once when reuse is allowed, no matter how often it's listed
+        double[] choices = Arrays.stream(numbers).distinct().toArray();
+        ConcurrentKeyIndex solutionKeys = new ConcurrentKeyIndex(1 << 10);
+        for (int length = 1; length <= numsAmount; length++) {
+            // Solutions of fewer numbers only leave their keys behind, for the full-length ones to be checked against
+            DepthFirstSearch search = new DepthFirstSearch(operators, length, target, parenthesesAllowed, solutionKeys, length == numsAmount ? solutionConsumer : solution -> {});
+            search.chooseNumbers(choices, reUseAllowed, 0, 0);
+            solutionKeys = search.solutionKeys;
+        }
+    }
+
+    /**
+     * Picks the numbers to combine in ascending order of their position, as every ordering is covered by the combining anyway.
+     */
+    private void chooseNumbers(double[] choices, boolean reUseAllowed, int chosen, int firstChoice) {
+        if (chosen == numsAmount) {
+            for (int i = 0; i < numsAmount; i++) {
+                values[0][i] = leafValues[i];
+                nodes[0][i] = i;
+            }
+            combine(0, numsAmount);
+            return;
+        }
+        for (int choice = firstChoice; choice < choices.length; choice++) {
+            leafValues[chosen] = choices[choice];
+            chooseNumbers(choices, reUseAllowed, chosen + 1, reUseAllowed ? choice : choice + 1);
+        }
+    }
+
+    private void combine(int depth, int count) {
+        if (count == 1) {
+            if (Utils.doubleEquals(values[depth][0], target)) report(nodes[depth][0]);
+            return;
+        }
+        double[] currentValues = values[depth];
+        int[] currentNodes = nodes[depth];
+        double[] nextValues = values[depth + 1];
+        int[] nextNodes = nodes[depth + 1];
+        int node = numsAmount + depth;
+
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                // Every operand except i and j carries over, followed by their combination
+                int next = 0;
+                for (int k = 0; k < count; k++) {
+                    if (k == i || k == j) continue;
+                    nextValues[next] = currentValues[k];
+                    nextNodes[next++] = currentNodes[k];
+                }
+                nextNodes[next] = node;
+
+                for (int operatorIndex = 0; operatorIndex < operators.size(); operatorIndex++) {
+                    Operator operator = operators.get(operatorIndex);
+                    nodeOperators[node] = operatorIndex;
+                    nodeLefts[node] = currentNodes[i];
+                    nodeRights[node] = currentNodes[j];
+                    nextValues[next] = operator.applyAsDouble(currentValues[i], currentValues[j]);
+                    combine(depth + 1, count - 1);
+                    // Swapping the operands only changes where parentheses are needed
+                    if (operator.isCommutativeAndAssociative && parenthesesAllowed) continue;
+
+                    nodeLefts[node] = currentNodes[j];
+                    nodeRights[node] = currentNodes[i];
+                    nextValues[next] = operator.applyAsDouble(currentValues[j], currentValues[i]);
+                    combine(depth + 1, count - 1);
+                }
+            }
+        }
+    }
+
+    private void report(int root) {
+        OperationResult solution = toOperationResult(root);
+        if (!parenthesesAllowed && solution.containsParentheses()) return;
+        solutionKeys = solutionKeys.withRoomForOneMore();
+        if (solutionKeys.add(solution.getFingerprint().toLong()))
+            solutionConsumer.accept(solution);
+    }
+
+    private OperationResult toOperationResult(int node) {
+        if (node < numsAmount) return new OperationResult(leafValues[node]);
+        return toOperationResult(nodeLefts[node]).apply(operators.get(nodeOperators[node]), toOperationResult(nodeRights[node]));
+    }
+}
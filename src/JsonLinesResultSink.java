@@ -0,0 +1,42 @@
+import operators.OperationResult;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes one JSON object per line, e.g. {@code {"expression":"2 + 3 + 4 + 5","value":14.0}}.
+ * Expressions only ever contain digits, operators, parentheses and spaces, so they need no escaping.
+ */
+public class JsonLinesResultSink implements ResultSink {
+    private final Writer writer;
+    private final StringBuilder builder = new StringBuilder();
+
+    public JsonLinesResultSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void accept(OperationResult operationResult) throws IOException {
+        builder.setLength(0);
+        builder.append("{\"expression\":\"");
+        operationResult.appendTo(builder);
+        builder.append("\",\"value\":");
+        if (Double.isFinite(operationResult.resultValue)) {
+            builder.append(operationResult.resultValue);
+        } else {
+            builder.append("null");
+        }
+        builder.append('}').append('\n');
+        writer.append(builder);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,345 @@
+import operators.OperationResult;
+import operators.Operator;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the level-by-level search of {@link ArithmeticCombinations#operationCombinations} as a pipeline of three stages:
+ * generator threads combine base expressions with their partners and emit batches of candidates, normalizer threads
+ * compute the canonical key of every candidate, and the calling thread deduplicates the keyed candidates and keeps them.
+ * The stages are connected by bounded queues, so a stage that falls behind blocks the one before it.
+ * <p>
+ * Which of several equivalent candidates is kept depends on the order they're inserted in, so every batch carries its
+ * position in the level-by-level search and the calling thread inserts them in that order, holding back batches that
+ * arrive early. Generators only combine a base with the partners that existed when the level started. Partners found
+ * earlier in the same level depend on what was kept, so the calling thread combines those itself when it gets to them.
+ * This way the same solutions are found as by {@link ArithmeticCombinations#operationCombinations}, on every run.
+ * <p>
+ * If any stage fails or the calling thread is interrupted, the other stages stop waiting on their queues and return.
+ */
+public class PipelineSearch {
+    private static final Batch END_OF_CANDIDATES = new Batch(-1, -1, -1, true, List.of());
+    private static final long POLL_MILLIS = 10;
+
+    private final int generatorThreads;
+    private final int normalizerThreads;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final Metrics metrics = new Metrics();
+
+    public PipelineSearch(int generatorThreads, int normalizerThreads, int batchSize, int queueCapacity) {
+        if (generatorThreads < 1 || normalizerThreads < 1) throw new IllegalArgumentException("Every stage needs at least one thread!");
+        if (batchSize < 1 || queueCapacity < 1) throw new IllegalArgumentException("Batches and queues must not be empty!");
+        this.generatorThreads = generatorThreads;
+        this.normalizerThreads = normalizerThreads;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Where a batch belongs in the level-by-level search: its base, the length of the partners and the chunk of those.
+     */
+    private record Position(int base, int partnerLength, int chunk) {
+    }
+
+    /**
+     * @param lastOfSegment true for the last chunk of the base's partners of this length, which may be empty
+     */
+    private record Batch(int base, int partnerLength, int chunk, boolean lastOfSegment, List<OperationResult> candidates) {
+        Position position() {
+            return new Position(base, partnerLength, chunk);
+        }
+    }
+
+    private record KeyedBatch(Batch batch, long[] keys) {
+    }
+
+    /**
+     * @param found         the new expressions found in a level, indexed by length
+     * @param canonicalKeys the keys of all expressions so far, which may have been resized during the level
+     */
+    private record Level(List<List<OperationResult>> found, ConcurrentKeyIndex canonicalKeys) {
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws InterruptedException;
+    }
+
+    /**
+     * Throughput of every stage, accumulated over all searches run by the same {@link PipelineSearch}.
+     * Time spent blocked on a full queue is counted separately from time spent working, and so is the time the calling
+     * thread spends generating and keying the candidates with partners found earlier in the same level.
+     */
+    public static class Metrics {
+        public final LongAdder generatedCandidates = new LongAdder();
+        public final LongAdder generatorNanos = new LongAdder();
+        public final LongAdder generatorBlockedNanos = new LongAdder();
+        public final LongAdder keyedCandidates = new LongAdder();
+        public final LongAdder normalizerNanos = new LongAdder();
+        public final LongAdder normalizerBlockedNanos = new LongAdder();
+        public final LongAdder inLevelCandidates = new LongAdder();
+        public final LongAdder inLevelNanos = new LongAdder();
+        public final LongAdder insertedCandidates = new LongAdder();
+        public final LongAdder sinkNanos = new LongAdder();
+        public final LongAdder sinkWaitingNanos = new LongAdder();
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "generate: %d candidates in %dms (blocked %dms)%nnormalize: %d candidates in %dms (blocked %dms)%nin-level partners: %d candidates in %dms%ndeduplicate: %d of %d kept in %dms (waiting %dms)",
+                    generatedCandidates.sum(), generatorNanos.sum() / 1_000_000, generatorBlockedNanos.sum() / 1_000_000,
+                    keyedCandidates.sum(), normalizerNanos.sum() / 1_000_000, normalizerBlockedNanos.sum() / 1_000_000,
+                    inLevelCandidates.sum(), inLevelNanos.sum() / 1_000_000,
+                    insertedCandidates.sum(), keyedCandidates.sum() + inLevelCandidates.sum(), sinkNanos.sum() / 1_000_000, sinkWaitingNanos.sum() / 1_000_000);
+        }
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public Collection<OperationResult> operationCombinations(List<Operator> operators, double[] numbers, int numsAmount, double target, boolean parenthesesAllowed, boolean reUseAllowed) throws InterruptedException {
+        if (numsAmount < 1) return List.of();
+
+        List<List<OperationResult>> argumentsByLength = ArithmeticCombinations.emptyByLength(numsAmount);
+        ConcurrentKeyIndex canonicalKeys = new ConcurrentKeyIndex(1 << 16);
+        for (double number : numbers) {
+            OperationResult original = new OperationResult(number);
+            // Cached up front, so that generator threads only ever read the shared expressions
+            original.usedOriginalValues();
+            argumentsByLength.get(1).add(original);
+            canonicalKeys.add(original.getFingerprint().toLong());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(generatorThreads + normalizerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-search-stage");
+            // Never keeps the JVM alive, even if a search is abandoned
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int length = 1; length < numsAmount; length++) {
+                Level level = runLevel(executor, operators, argumentsByLength, length, numsAmount, target, parenthesesAllowed, reUseAllowed, canonicalKeys);
+                for (int foundLength = 0; foundLength <= numsAmount; foundLength++) {
+                    for (OperationResult operationResult : level.found().get(foundLength)) {
+                        operationResult.usedOriginalValues();
+                    }
+                    argumentsByLength.get(foundLength).addAll(level.found().get(foundLength));
+                }
+                canonicalKeys = level.canonicalKeys();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return ArithmeticCombinations.solutions(argumentsByLength, numsAmount, target);
+    }
+
+    private Level runLevel(ExecutorService executor, List<Operator> operators, List<List<OperationResult>> argumentsByLength, int length, int numsAmount, double target, boolean parenthesesAllowed, boolean reUseAllowed, ConcurrentKeyIndex canonicalKeys) throws InterruptedException {
+        BlockingQueue<Batch> candidateQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<KeyedBatch> keyQueue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger nextBase = new AtomicInteger();
+        AtomicInteger runningGenerators = new AtomicInteger(generatorThreads);
+        // Bounds how far generators get ahead of the base being inserted, and with it the batches held back
+        Semaphore basesInFlight = new Semaphore(2 * generatorThreads);
+        List<OperationResult> bases = argumentsByLength.get(length);
+        int maxPartnerLength = numsAmount - length;
+
+        for (int i = 0; i < generatorThreads; i++) {
+            executor.execute(stage(failure, () -> {
+                generate(operators, argumentsByLength, bases, nextBase, basesInFlight, maxPartnerLength, numsAmount, target, parenthesesAllowed, reUseAllowed, candidateQueue, failure);
+                if (runningGenerators.decrementAndGet() == 0) {
+                    for (int j = 0; j < normalizerThreads; j++) {
+                        if (!offer(candidateQueue, END_OF_CANDIDATES, failure)) return;
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < normalizerThreads; i++) {
+            executor.execute(stage(failure, () -> normalize(candidateQueue, keyQueue, failure)));
+        }
+
+        List<List<OperationResult>> found = ArithmeticCombinations.emptyByLength(numsAmount);
+        try {
+            Map<Position, KeyedBatch> heldBack = new HashMap<>();
+            // How many expressions of every length this level had found before the current base
+            int[] foundBeforeBase = new int[numsAmount + 1];
+            Position next = new Position(0, 1, 0);
+            while (next.base() < bases.size()) {
+                KeyedBatch keyedBatch = heldBack.remove(next);
+                if (Objects.isNull(keyedBatch)) {
+                    long waitStart = System.nanoTime();
+                    keyedBatch = poll(keyQueue, failure);
+                    metrics.sinkWaitingNanos.add(System.nanoTime() - waitStart);
+                    if (Objects.isNull(keyedBatch)) break;
+                    heldBack.put(keyedBatch.batch().position(), keyedBatch);
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                Batch batch = keyedBatch.batch();
+                canonicalKeys = keep(batch.candidates(), keyedBatch.keys(), canonicalKeys, found);
+                if (!batch.lastOfSegment()) {
+                    next = new Position(batch.base(), batch.partnerLength(), batch.chunk() + 1);
+                } else {
+                    long inLevelStart = System.nanoTime();
+                    List<OperationResult> candidates = new ArrayList<>();
+                    List<OperationResult> partners = found.get(batch.partnerLength());
+                    for (int i = 0; i < foundBeforeBase[batch.partnerLength()]; i++) {
+                        ArithmeticCombinations.combine(operators, bases.get(batch.base()), partners.get(i), numsAmount, target, parenthesesAllowed, reUseAllowed, candidates);
+                    }
+                    long[] keys = new long[candidates.size()];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = candidates.get(i).getFingerprint().toLong();
+                    }
+                    long inLevelNanos = System.nanoTime() - inLevelStart;
+                    // Not part of the deduplication itself, so it doesn't count towards the time of the sink
+                    start += inLevelNanos;
+                    metrics.inLevelNanos.add(inLevelNanos);
+                    metrics.inLevelCandidates.add(keys.length);
+                    canonicalKeys = keep(candidates, keys, canonicalKeys, found);
+
+                    if (batch.partnerLength() < maxPartnerLength) {
+                        next = new Position(batch.base(), batch.partnerLength() + 1, 0);
+                    } else {
+                        next = new Position(batch.base() + 1, 1, 0);
+                        for (int foundLength = 0; foundLength <= numsAmount; foundLength++) {
+                            foundBeforeBase[foundLength] = found.get(foundLength).size();
+                        }
+                        basesInFlight.release();
+                    }
+                }
+                metrics.sinkNanos.add(System.nanoTime() - start);
+            }
+        } catch (Throwable e) {
+            // Makes the other stages give up instead of waiting for the calling thread
+            failure.compareAndSet(null, e);
+            throw e;
+        }
+
+        if (Objects.nonNull(failure.get())) throw new IllegalStateException("Pipeline stage failed", failure.get());
+        return new Level(found, canonicalKeys);
+    }
+
+    private ConcurrentKeyIndex keep(List<OperationResult> candidates, long[] keys, ConcurrentKeyIndex canonicalKeys, List<List<OperationResult>> found) {
+        for (int i = 0; i < keys.length; i++) {
+            // The index is only ever resized here, between inserts
+            canonicalKeys = canonicalKeys.withRoomForOneMore();
+            if (canonicalKeys.add(keys[i])) {
+                OperationResult candidate = candidates.get(i);
+                found.get(candidate.length()).add(candidate);
+                metrics.insertedCandidates.increment();
+            }
+        }
+        return canonicalKeys;
+    }
+
+    private void generate(List<Operator> operators, List<List<OperationResult>> argumentsByLength, List<OperationResult> bases, AtomicInteger nextBase, Semaphore basesInFlight, int maxPartnerLength, int numsAmount, double target, boolean parenthesesAllowed, boolean reUseAllowed, BlockingQueue<Batch> candidateQueue, AtomicReference<Throwable> failure) throws InterruptedException {
+        long start = System.nanoTime();
+        long blockedNanos = 0;
+        try {
+            while (true) {
+                long blockedStart = System.nanoTime();
+                boolean acquired = acquire(basesInFlight, failure);
+                blockedNanos += System.nanoTime() - blockedStart;
+                if (!acquired) return;
+                int baseIndex = nextBase.getAndIncrement();
+                if (baseIndex >= bases.size()) return;
+
+                OperationResult base = bases.get(baseIndex);
+                for (int partnerLength = 1; partnerLength <= maxPartnerLength; partnerLength++) {
+                    List<OperationResult> partners = argumentsByLength.get(partnerLength);
+                    int partnerIndex = 0;
+                    int chunk = 0;
+                    boolean lastOfSegment;
+                    do {
+                        List<OperationResult> candidates = new ArrayList<>(batchSize);
+                        while (partnerIndex < partners.size() && candidates.size() < batchSize) {
+                            ArithmeticCombinations.combine(operators, base, partners.get(partnerIndex++), numsAmount, target, parenthesesAllowed, reUseAllowed, candidates);
+                        }
+                        lastOfSegment = partnerIndex == partners.size();
+                        metrics.generatedCandidates.add(candidates.size());
+
+                        blockedStart = System.nanoTime();
+                        boolean offered = offer(candidateQueue, new Batch(baseIndex, partnerLength, chunk++, lastOfSegment, candidates), failure);
+                        blockedNanos += System.nanoTime() - blockedStart;
+                        if (!offered) return;
+                    } while (!lastOfSegment);
+                }
+            }
+        } finally {
+            metrics.generatorNanos.add(System.nanoTime() - start - blockedNanos);
+            metrics.generatorBlockedNanos.add(blockedNanos);
+        }
+    }
+
+    private void normalize(BlockingQueue<Batch> candidateQueue, BlockingQueue<KeyedBatch> keyQueue, AtomicReference<Throwable> failure) throws InterruptedException {
+        while (true) {
+            Batch batch = poll(candidateQueue, failure);
+            if (Objects.isNull(batch) || batch == END_OF_CANDIDATES) return;
+            long start = System.nanoTime();
+            long[] keys = new long[batch.candidates().size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = batch.candidates().get(i).getFingerprint().toLong();
+            }
+            long blockedStart = System.nanoTime();
+            metrics.normalizerNanos.add(blockedStart - start);
+            metrics.keyedCandidates.add(keys.length);
+            boolean offered = offer(keyQueue, new KeyedBatch(batch, keys), failure);
+            metrics.normalizerBlockedNanos.add(System.nanoTime() - blockedStart);
+            if (!offered) return;
+        }
+    }
+
+    /**
+     * Records the first failure of any stage, an interrupt included, so that all the other stages stop too.
+     */
+    private static Runnable stage(AtomicReference<Throwable> failure, Stage stage) {
+        return () -> {
+            try {
+                stage.run();
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        };
+    }
+
+    /**
+     * Waits for room in {@code queue} for as long as no stage has failed.
+     *
+     * @return false if a stage failed first, after which nobody is going to take {@code element}
+     */
+    private static <T> boolean offer(BlockingQueue<T> queue, T element, AtomicReference<Throwable> failure) throws InterruptedException {
+        while (!queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (Objects.nonNull(failure.get())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the head of {@code queue}, or null if a stage failed before anything arrived
+     */
+    private static <T> T poll(BlockingQueue<T> queue, AtomicReference<Throwable> failure) throws InterruptedException {
+        T element;
+        while (Objects.isNull(element = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS))) {
+            if (Objects.nonNull(failure.get())) return null;
+        }
+        return element;
+    }
+
+    private static boolean acquire(Semaphore semaphore, AtomicReference<Throwable> failure) throws InterruptedException {
+        while (!semaphore.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (Objects.nonNull(failure.get())) return false;
+        }
+        return true;
+    }
+}
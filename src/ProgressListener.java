@@ -0,0 +1,15 @@
+/**
+ * Receives progress of {@link ArithmeticCombinations#operationCombinations}, once for every base expression
+ * of a level before it is combined, and once more when the level is done.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    ProgressListener NONE = (level, processed, total) -> {};
+
+    /**
+     * @param level     length of the base expressions currently being combined
+     * @param processed base expressions of this level already combined with all their partners
+     * @param total     base expressions in this level
+     */
+    void onProgress(int level, int processed, int total);
+}
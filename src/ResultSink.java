@@ -0,0 +1,13 @@
+import operators.OperationResult;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Destination for solutions as they are reported, e.g. {@link TextResultSink}, {@link JsonLinesResultSink}
+ * or {@link BinaryResultSink}.
+ */
+public interface ResultSink extends Flushable, Closeable {
+    void accept(OperationResult operationResult) throws IOException;
+}
@@ -0,0 +1,187 @@
+import operators.OperationResult;
+import operators.Operator;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Periodically saves the state of {@link ArithmeticCombinations#operationCombinations} to a file, so that a restarted
+ * search with the same parameters continues from the last save instead of starting over.
+ * <p>
+ * The file holds the search parameters, the {@link Cursor} to continue from, and every expression found so far
+ * grouped by length, each encoded the same way as {@link BinaryResultSink} does.
+ * <p>
+ * Saves happen between two partners of a base expression, so the smallest step that can make progress is combining
+ * one base with one partner. A cancelled search doesn't save once more, and a save that likely wouldn't be done by the
+ * deadline is skipped, so that the search still returns in time. Everything since the last save is redone after
+ * a restart. Searches that are cut short by a deadline over and over therefore only make progress as long as loading
+ * the checkpoint, the interval and one save together take less than the deadline. Loading and saving take time in
+ * proportion to the expressions found so far, so a deadline that is too short stops making progress at some point.
+ */
+public class SearchCheckpoint {
+    private static final int MAGIC = 0x41434332;  // "ACC2"
+
+    private final Path file;
+    private final long intervalNanos;
+    private long lastSaveNanos;
+    private double saveNanosPerExpression = 0;
+
+    private SearchCheckpoint(Path file, Duration interval) {
+        this.file = file;
+        this.intervalNanos = Objects.isNull(interval) ? 0 : interval.toNanos();
+        this.lastSaveNanos = System.nanoTime();
+    }
+
+    public static SearchCheckpoint none() {
+        return new SearchCheckpoint(null, null);
+    }
+
+    public static SearchCheckpoint every(Duration interval, Path file) {
+        return new SearchCheckpoint(file, interval);
+    }
+
+    /**
+     * @param level         length of the base expressions to continue with
+     * @param baseIndex     index of the base expression to continue with
+     * @param partnerLength length of the partner to continue with
+     * @param partnerIndex  index of the first partner of that length not yet combined with the base
+     */
+    record Cursor(int level, int baseIndex, int partnerLength, int partnerIndex) {
+    }
+
+    /**
+     * @param partnerCounts     how many partners of every length the base is combined with
+     * @param argumentsByLength all expressions found so far, indexed by length
+     */
+    record State(Cursor cursor, int[] partnerCounts, List<List<OperationResult>> argumentsByLength) {
+    }
+
+    static byte[] parameters(List<Operator> operators, double[] numbers, int numsAmount, double target, boolean parenthesesAllowed, boolean reUseAllowed, int shardIndex, int shardCount) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(operators.size());
+            for (Operator operator : operators) {
+                output.writeInt(operator.ordinal);
+            }
+            output.writeInt(numbers.length);
+            for (double number : numbers) {
+                output.writeDouble(number);
+            }
+            output.writeInt(numsAmount);
+            output.writeDouble(target);
+            output.writeBoolean(parenthesesAllowed);
+            output.writeBoolean(reUseAllowed);
+            output.writeInt(shardIndex);
+            output.writeInt(shardCount);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the saved state, or null if there is none for these parameters
+     */
+    State load(byte[] parameters) {
+        lastSaveNanos = System.nanoTime();
+        if (Objects.isNull(file) || !Files.exists(file)) return null;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC) return null;
+            byte[] savedParameters = new byte[input.readInt()];
+            input.readFully(savedParameters);
+            if (!Arrays.equals(parameters, savedParameters)) return null;
+
+            Cursor cursor = new Cursor(input.readInt(), input.readInt(), input.readInt(), input.readInt());
+            int[] partnerCounts = new int[input.readInt()];
+            for (int length = 0; length < partnerCounts.length; length++) {
+                partnerCounts[length] = input.readInt();
+            }
+            int maxLength = input.readInt();
+            BinaryResultReader reader = new BinaryResultReader(input);
+            List<List<OperationResult>> argumentsByLength = new ArrayList<>();
+            for (int length = 0; length <= maxLength; length++) {
+                int count = input.readInt();
+                List<OperationResult> arguments = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    OperationResult argument = reader.read();
+                    if (Objects.isNull(argument)) throw new EOFException("Checkpoint ends before all expressions were read");
+                    arguments.add(argument);
+                }
+                argumentsByLength.add(arguments);
+            }
+            return new State(cursor, partnerCounts, argumentsByLength);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not read checkpoint %s", file), e);
+        }
+    }
+
+    /**
+     * Called before combining the base with every partner, the arguments are those of {@link Cursor}.
+     */
+    void saveIfDue(byte[] parameters, int level, int baseIndex, int partnerLength, int partnerIndex, int[] partnerCounts, List<List<OperationResult>> argumentsByLength, CancellationToken cancellationToken) {
+        if (Objects.isNull(file) || System.nanoTime() - lastSaveNanos < intervalNanos) return;
+        int expressionCount = 0;
+        for (List<OperationResult> arguments : argumentsByLength) {
+            expressionCount += arguments.size();
+        }
+        // Estimated from the last save, the time it takes grows with the amount of expressions
+        if (saveNanosPerExpression * expressionCount > cancellationToken.remainingNanos()) return;
+
+        long start = System.nanoTime();
+        save(parameters, new Cursor(level, baseIndex, partnerLength, partnerIndex), partnerCounts, argumentsByLength);
+        saveNanosPerExpression = (double) (lastSaveNanos - start) / Math.max(1, expressionCount);
+    }
+
+    private void save(byte[] parameters, Cursor cursor, int[] partnerCounts, List<List<OperationResult>> argumentsByLength) {
+        // Written to a temporary file first so that a crash while saving never destroys the previous checkpoint
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(parameters.length);
+            output.write(parameters);
+            output.writeInt(cursor.level());
+            output.writeInt(cursor.baseIndex());
+            output.writeInt(cursor.partnerLength());
+            output.writeInt(cursor.partnerIndex());
+            output.writeInt(partnerCounts.length);
+            for (int partnerCount : partnerCounts) {
+                output.writeInt(partnerCount);
+            }
+            output.writeInt(argumentsByLength.size() - 1);
+            BinaryResultSink sink = new BinaryResultSink(output);
+            for (List<OperationResult> arguments : argumentsByLength) {
+                output.writeInt(arguments.size());
+                for (OperationResult argument : arguments) {
+                    sink.accept(argument);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not write checkpoint %s", file), e);
+        }
+        try {
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not write checkpoint %s", file), e);
+        }
+        lastSaveNanos = System.nanoTime();
+    }
+
+    /**
+     * Called once the search has finished, the next search with the same parameters starts over.
+     */
+    void delete() {
+        if (Objects.isNull(file)) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not delete checkpoint %s", file), e);
+        }
+    }
+}
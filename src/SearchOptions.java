@@ -0,0 +1,78 @@
+import java.util.Objects;
+
+/**
+ * Optional settings of {@link ArithmeticCombinations#operationCombinations}, grouped so that a new setting doesn't
+ * need another overload. {@link #defaults()} runs the whole search in one go, and every {@code with} method returns
+ * a copy with one setting changed.
+ */
+public final class SearchOptions {
+    private static final SearchOptions DEFAULTS = new SearchOptions(0, 1, CancellationToken.none(), ProgressListener.NONE, SearchCheckpoint.none());
+
+    private final int shardIndex;
+    private final int shardCount;
+    private final CancellationToken cancellationToken;
+    private final ProgressListener progressListener;
+    private final SearchCheckpoint checkpoint;
+
+    private SearchOptions(int shardIndex, int shardCount, CancellationToken cancellationToken, ProgressListener progressListener, SearchCheckpoint checkpoint) {
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.cancellationToken = Objects.requireNonNull(cancellationToken);
+        this.progressListener = Objects.requireNonNull(progressListener);
+        this.checkpoint = Objects.requireNonNull(checkpoint);
+    }
+
+    public static SearchOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Only finds the solutions belonging to shard {@code shardIndex} out of {@code shardCount}, see
+     * {@link ArithmeticCombinations#shardOf} for how they're assigned. Together the shards find the same solutions as
+     * a single search, once deduplicated. Where numbers can cancel out, with reuse or with 1 or -1 in the input,
+     * they can also find a few that a single search leaves out as equivalent to an expression of other numbers.
+     */
+    public SearchOptions withShard(int shardIndex, int shardCount) {
+        if (shardIndex < 0 || shardIndex >= shardCount)
+            throw new IllegalArgumentException(String.format("Shard index %d out of range for %d shards!", shardIndex, shardCount));
+        return new SearchOptions(shardIndex, shardCount, cancellationToken, progressListener, checkpoint);
+    }
+
+    /**
+     * Stops early once {@code cancellationToken} is cancelled, returning the solutions found so far marked as incomplete.
+     */
+    public SearchOptions withCancellationToken(CancellationToken cancellationToken) {
+        return new SearchOptions(shardIndex, shardCount, cancellationToken, progressListener, checkpoint);
+    }
+
+    public SearchOptions withProgressListener(ProgressListener progressListener) {
+        return new SearchOptions(shardIndex, shardCount, cancellationToken, progressListener, checkpoint);
+    }
+
+    /**
+     * Continues from {@code checkpoint} if it was saved by a search with the same parameters.
+     */
+    public SearchOptions withCheckpoint(SearchCheckpoint checkpoint) {
+        return new SearchOptions(shardIndex, shardCount, cancellationToken, progressListener, checkpoint);
+    }
+
+    public int shardIndex() {
+        return shardIndex;
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    public CancellationToken cancellationToken() {
+        return cancellationToken;
+    }
+
+    public ProgressListener progressListener() {
+        return progressListener;
+    }
+
+    public SearchCheckpoint checkpoint() {
+        return checkpoint;
+    }
+}
@@ -0,0 +1,10 @@
+import operators.OperationResult;
+
+import java.util.Collection;
+
+/**
+ * @param solutions solutions found by the search
+ * @param complete  false if the search was cancelled before finishing, in which case {@code solutions} may be missing some
+ */
+public record SearchResult(Collection<OperationResult> solutions, boolean complete) {
+}
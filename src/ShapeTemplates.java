@@ -0,0 +1,280 @@
+import operators.Fingerprint;
+import operators.OperationResult;
+import operators.Operator;
+import operators.Utils;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Every full-length expression as a template: a tree shape with its leaves numbered left to right and an operator
+ * assigned to every inner node. The templates only depend on the amount of numbers and the operators,
+ * so they are compiled once and then evaluated against all orderings of the input numbers in batches.
+ * <p>
+ * Evaluation runs one operator at a time over a whole batch of orderings in plain primitive loops,
+ * which the JIT can vectorize, instead of building an {@link OperationResult} for every candidate.
+ * Only the candidates that hit the target are turned into expressions.
+ * <p>
+ * A template whose commutative operator has a bigger subtree shape on the left than on the right is the mirror image
+ * of another template, which covers the same expressions once the leaves are reordered. Mirrored templates are only
+ * evaluated when parentheses aren't allowed, because mirroring changes where parentheses are needed.
+ * Subtrees with the same shape can't be told apart by the template, so those are still evaluated in both orders.
+ */
+public class ShapeTemplates {
+    private static final int BATCH_SIZE = 1024;
+
+    private final List<Operator> operators;
+    private final int numsAmount;
+    // Postfix code of all templates back to back: a non-negative value is a leaf slot, a negative value -(i + 1) is operators.get(i)
+    private final int[] code;
+    private final int[] offsets;
+    private final boolean[] mirrored;
+    // Templates for one number less, down to a single number
+    private final ShapeTemplates shorter;
+
+    private ShapeTemplates(List<Operator> operators, int numsAmount, int[] code, int[] offsets, boolean[] mirrored, ShapeTemplates shorter) {
+        this.operators = operators;
+        this.numsAmount = numsAmount;
+        this.code = code;
+        this.offsets = offsets;
+        this.mirrored = mirrored;
+        this.shorter = shorter;
+    }
+
+    /**
+     * @throws IllegalArgumentException if there are too many templates for {@code numsAmount} to fit in one table
+     */
+    public static ShapeTemplates compile(List<Operator> operators, int numsAmount) {
+        if (numsAmount < 1) throw new IllegalArgumentException("Templates need at least one number!");
+        int templateLength = 2 * numsAmount - 1;
+        long templateCount = shapeCount(numsAmount);
+        for (int i = 1; i < numsAmount && templateCount <= Integer.MAX_VALUE; i++) {
+            templateCount *= operators.size();
+        }
+        if (templateCount > (Integer.MAX_VALUE - 8) / templateLength)
+            throw new IllegalArgumentException(String.format("%d numbers with %d operators need more templates than fit in one table!", numsAmount, operators.size()));
+
+        ShapeTemplates shorter = numsAmount > 1 ? compile(operators, numsAmount - 1) : null;
+        int operatorAssignments = (int) Math.pow(operators.size(), numsAmount - 1);
+        int[] code = new int[(int) templateCount * templateLength];
+        int[] offsets = new int[(int) templateCount + 1];
+        boolean[] mirrored = new boolean[(int) templateCount];
+        int template = 0;
+        for (int[] shape : shapes(numsAmount)) {
+            int[] subtreeStarts = subtreeStarts(shape);
+            for (int assignment = 0; assignment < operatorAssignments; assignment++) {
+                int offset = template * templateLength;
+                int leaf = 0;
+                int remainingAssignment = assignment;
+                for (int i = 0; i < templateLength; i++) {
+                    if (shape[i] == 0) {
+                        code[offset + i] = leaf++;
+                        continue;
+                    }
+                    Operator operator = operators.get(remainingAssignment % operators.size());
+                    code[offset + i] = -(remainingAssignment % operators.size() + 1);
+                    remainingAssignment /= operators.size();
+                    // The right subtree ends just before its parent, the left one just before the right one
+                    int rightStart = subtreeStarts[i - 1];
+                    int leftStart = subtreeStarts[rightStart - 1];
+                    if (operator.isCommutativeAndAssociative && compareShapes(shape, leftStart, rightStart, rightStart, i) > 0)
+                        mirrored[template] = true;
+                }
+                offsets[++template] = offset + templateLength;
+            }
+        }
+        return new ShapeTemplates(operators, numsAmount, code, offsets, mirrored, shorter);
+    }
+
+    /**
+     * @return the amount of full binary trees with the given amount of leaves, a Catalan number
+     */
+    private static long shapeCount(int leaves) {
+        long count = 1;
+        for (int i = 1; i < leaves && count <= Integer.MAX_VALUE; i++) {
+            count = count * 2 * (2 * i - 1) / (i + 1);
+        }
+        return count;
+    }
+
+    /**
+     * @return for every position of a postfix shape, the position its subtree starts at
+     */
+    private static int[] subtreeStarts(int[] shape) {
+        int[] starts = new int[shape.length];
+        for (int i = 0; i < shape.length; i++) {
+            starts[i] = shape[i] == 0 ? i : starts[starts[i - 1] - 1];
+        }
+        return starts;
+    }
+
+    /**
+     * Orders subtree shapes by their amount of nodes first and their postfix code second.
+     */
+    private static int compareShapes(int[] shape, int leftStart, int leftEnd, int rightStart, int rightEnd) {
+        int comparison = Integer.compare(leftEnd - leftStart, rightEnd - rightStart);
+        if (comparison != 0) return comparison;
+        return Arrays.compare(shape, leftStart, leftEnd, shape, rightStart, rightEnd);
+    }
+
+    /**
+     * @return every full binary tree with the given amount of leaves, in postfix with 0 for a leaf and 1 for an inner node
+     */
+    private static List<int[]> shapes(int leaves) {
+        if (leaves == 1) return List.of(new int[]{0});
+        List<int[]> result = new ArrayList<>();
+        for (int leftLeaves = 1; leftLeaves < leaves; leftLeaves++) {
+            for (int[] left : shapes(leftLeaves)) {
+                for (int[] right : shapes(leaves - leftLeaves)) {
+                    int[] shape = Arrays.copyOf(left, left.length + right.length + 1);
+                    System.arraycopy(right, 0, shape, left.length, right.length);
+                    shape[shape.length - 1] = 1;
+                    result.add(shape);
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Finds the solutions of {@link ArithmeticCombinations#operationCombinations}, one per equivalence class.
+     * A solution equivalent to an expression of fewer numbers, such as {@code 2 * 7 * 1} for {@code 2 * 7}, is always
+     * left out, so the shorter templates are evaluated first. See
+     * {@link ArithmeticCombinations#operationCombinations(List, double[], int, double, boolean, boolean, SearchOptions)}
+     * for where its solutions can differ from the level-by-level search.
+     */
+    public Collection<OperationResult> solutions(double[] numbers, double target, boolean parenthesesAllowed, boolean reUseAllowed) {
+        // Without reuse a number can only be used once no matter how often it's listed
+        double[] values = reUseAllowed ? numbers : Arrays.stream(numbers).distinct().toArray();
+        HashSet<Fingerprint> fingerprints = new HashSet<>();
+        for (ShapeTemplates templates = shorter; templates != null; templates = templates.shorter) {
+            templates.forEachSolution(values, target, parenthesesAllowed, reUseAllowed, solution -> fingerprints.add(solution.getFingerprint()));
+        }
+        List<OperationResult> result = new ArrayList<>();
+        forEachSolution(values, target, parenthesesAllowed, reUseAllowed, solution -> {
+            if (fingerprints.add(solution.getFingerprint())) result.add(solution);
+        });
+        return result;
+    }
+
+    private void forEachSolution(double[] values, double target, boolean parenthesesAllowed, boolean reUseAllowed, Consumer<OperationResult> solutionConsumer) {
+        double[][] leafColumns = new double[numsAmount][BATCH_SIZE];
+        double[][] stack = new double[numsAmount][BATCH_SIZE];
+        // The orderings of the batch one after another, numsAmount indices each
+        int[] batchIndices = new int[BATCH_SIZE * numsAmount];
+
+        int[] indices = new int[numsAmount];
+        boolean[] used = new boolean[values.length];
+        boolean more = firstIndices(indices, used, reUseAllowed);
+        while (more) {
+            int batchSize = 0;
+            while (more && batchSize < BATCH_SIZE) {
+                for (int slot = 0; slot < numsAmount; slot++) {
+                    leafColumns[slot][batchSize] = values[indices[slot]];
+                }
+                System.arraycopy(indices, 0, batchIndices, batchSize++ * numsAmount, numsAmount);
+                more = nextIndices(indices, used, reUseAllowed);
+            }
+
+            for (int template = 0; template < size(); template++) {
+                if (parenthesesAllowed && mirrored[template]) continue;
+                double[] resultColumn = evaluate(template, leafColumns, stack, batchSize);
+                for (int i = 0; i < batchSize; i++) {
+                    if (!Utils.doubleEquals(resultColumn[i], target)) continue;
+                    OperationResult solution = instantiate(template, values, batchIndices, i * numsAmount);
+                    if (parenthesesAllowed || !solution.containsParentheses()) solutionConsumer.accept(solution);
+                }
+            }
+        }
+    }
+
+    private double[] evaluate(int template, double[][] leafColumns, double[][] stack, int batchSize) {
+        int top = 0;
+        for (int i = offsets[template]; i < offsets[template + 1]; i++) {
+            int token = code[i];
+            if (token >= 0) {
+                System.arraycopy(leafColumns[token], 0, stack[top++], 0, batchSize);
+                continue;
+            }
+            double[] left = stack[top - 2];
+            double[] right = stack[top - 1];
+            Operator operator = operators.get(-token - 1);
+            // The default operators get their own loops so that they can be vectorized
+            switch (operator.ordinal) {
+                case 0 -> { for (int j = 0; j < batchSize; j++) left[j] = left[j] + right[j]; }
+                case 1 -> { for (int j = 0; j < batchSize; j++) left[j] = left[j] - right[j]; }
+                case 2 -> { for (int j = 0; j < batchSize; j++) left[j] = left[j] * right[j]; }
+                case 3 -> { for (int j = 0; j < batchSize; j++) left[j] = left[j] / right[j]; }
+                default -> { for (int j = 0; j < batchSize; j++) left[j] = operator.applyAsDouble(left[j], right[j]); }
+            }
+            top--;
+        }
+        return stack[0];
+    }
+
+    private OperationResult instantiate(int template, double[] values, int[] batchIndices, int offset) {
+        Deque<OperationResult> stack = new ArrayDeque<>();
+        for (int i = offsets[template]; i < offsets[template + 1]; i++) {
+            int token = code[i];
+            if (token >= 0) {
+                stack.push(new OperationResult(values[batchIndices[offset + token]]));
+            } else {
+                OperationResult right = stack.pop();
+                OperationResult left = stack.pop();
+                stack.push(left.apply(operators.get(-token - 1), right));
+            }
+        }
+        return stack.pop();
+    }
+
+    private boolean firstIndices(int[] indices, boolean[] used, boolean reUseAllowed) {
+        if (reUseAllowed) return used.length > 0;
+        if (used.length < numsAmount) return false;
+        for (int slot = 0; slot < numsAmount; slot++) {
+            indices[slot] = slot;
+            used[slot] = true;
+        }
+        return true;
+    }
+
+    /**
+     * Advances to the next ordering of values in lexicographic order, modifying {@code indices} in place.
+     * Without reuse only orderings of different values are generated, with {@code used} marking the values of the
+     * current one.
+     *
+     * @return false once all orderings have been visited
+     */
+    private boolean nextIndices(int[] indices, boolean[] used, boolean reUseAllowed) {
+        int valueCount = used.length;
+        if (reUseAllowed) {
+            int slot = numsAmount - 1;
+            while (slot >= 0 && indices[slot] == valueCount - 1) {
+                indices[slot--] = 0;
+            }
+            if (slot < 0) return false;
+            indices[slot]++;
+            return true;
+        }
+        for (int slot = numsAmount - 1; slot >= 0; slot--) {
+            used[indices[slot]] = false;
+            int value = indices[slot] + 1;
+            while (value < valueCount && used[value]) value++;
+            if (value == valueCount) continue;
+            indices[slot] = value;
+            used[value] = true;
+            // The slots after it start over with the smallest values left
+            int next = 0;
+            for (int rest = slot + 1; rest < numsAmount; rest++) {
+                while (used[next]) next++;
+                indices[rest] = next;
+                used[next] = true;
+            }
+            return true;
+        }
+        return false;
+    }
+}
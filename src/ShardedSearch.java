@@ -0,0 +1,191 @@
+import operators.OperationResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static operators.Operators.*;
+
+/**
+ * Runs {@link ArithmeticCombinations#operationCombinations} split into shards, each in its own local process.
+ * Every shard writes its solutions to its own file in the output directory in the format of {@link BinaryResultSink},
+ * and the files are merged once all shards have finished.
+ * <p>
+ * Shards whose file already exists are not run again, so after a failure only the failed shards are rerun.
+ * The query is written to the directory too, and a directory holding the shards of a different query is rejected.
+ */
+public class ShardedSearch {
+    private static final String SHARD_COMMAND = "--shard";
+    private static final String QUERY_FILE = "query";
+
+    private final List<Double> numbers;
+    private final int numsAmount;
+    private final double target;
+    private final boolean parenthesesAllowed;
+    private final boolean reUseAllowed;
+    private final int shardCount;
+    private final Path directory;
+
+    public ShardedSearch(List<Double> numbers, int numsAmount, double target, boolean parenthesesAllowed, boolean reUseAllowed, int shardCount, Path directory) {
+        if (shardCount < 1) throw new IllegalArgumentException("There must be at least one shard!");
+        this.numbers = numbers;
+        this.numsAmount = numsAmount;
+        this.target = target;
+        this.parenthesesAllowed = parenthesesAllowed;
+        this.reUseAllowed = reUseAllowed;
+        this.shardCount = shardCount;
+        this.directory = directory;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && SHARD_COMMAND.equals(args[0])) {
+            runShard(args);
+            return;
+        }
+
+        List<Double> numbers = Stream.of(2, 3, 4, 5, 7, 8, 9, 44, 55).map(Integer::doubleValue).toList();
+
+        long start = System.currentTimeMillis();
+
+        Collection<OperationResult> result = new ShardedSearch(
+                numbers,
+                4,
+                14,
+                true,
+                false,
+                Runtime.getRuntime().availableProcessors(),
+                Path.of("shards")
+        ).run();
+
+        long end = System.currentTimeMillis();
+
+        System.out.printf("Combinations found: %d%n%n", result.size());
+
+        ResultSink resultSink = new TextResultSink(new BufferedWriter(new OutputStreamWriter(System.out)));
+        for (OperationResult operationResult : result) {
+            resultSink.accept(operationResult);
+        }
+        resultSink.flush();
+
+        System.out.printf("%nRan in %dms", end - start);
+
+        System.out.printf("%nCombinations found: %d%n", result.size());
+    }
+
+    /**
+     * Runs all shards that don't have a result file yet, then merges all shard files.
+     *
+     * @return the deduplicated solutions of all shards
+     * @throws IllegalStateException if any of the shards failed, or if the directory holds the shards of a different query
+     */
+    public Collection<OperationResult> run() throws IOException, InterruptedException {
+        Files.createDirectories(directory);
+        checkOrWriteQuery();
+
+        Map<Integer, Process> processes = new LinkedHashMap<>();
+        for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            if (Files.exists(shardFile(shardIndex))) continue;
+            processes.put(shardIndex, startShard(shardIndex));
+        }
+
+        List<Integer> failedShards = new ArrayList<>();
+        for (Map.Entry<Integer, Process> entry : processes.entrySet()) {
+            if (entry.getValue().waitFor() != 0) failedShards.add(entry.getKey());
+        }
+        if (!failedShards.isEmpty())
+            throw new IllegalStateException(String.format("Shards %s failed, see their logs in %s", failedShards, directory));
+
+        List<Path> shardFiles = new ArrayList<>();
+        for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            shardFiles.add(shardFile(shardIndex));
+        }
+        return merge(shardFiles);
+    }
+
+    /**
+     * Deduplicates solutions across shard files by their fingerprint, keeping the first of every equivalent group.
+     * Fingerprints are computed again in this process, so the shards don't need to share a fingerprint seed.
+     */
+    public static Collection<OperationResult> merge(List<Path> shardFiles) throws IOException {
+        Map<Long, OperationResult> solutions = new LinkedHashMap<>();
+        for (Path shardFile : shardFiles) {
+            try (BinaryResultReader reader = new BinaryResultReader(new BufferedInputStream(Files.newInputStream(shardFile)))) {
+                for (OperationResult operationResult = reader.read(); operationResult != null; operationResult = reader.read()) {
+                    solutions.putIfAbsent(operationResult.getFingerprint().toLong(), operationResult);
+                }
+            }
+        }
+        return solutions.values();
+    }
+
+    private void checkOrWriteQuery() throws IOException {
+        double[] values = numbers.stream().mapToDouble(Double::doubleValue).toArray();
+        // Every shard of the query is kept in the same directory, so the shard index is left at 0
+        byte[] query = SearchCheckpoint.parameters(DEFAULT_OPERATORS, values, numsAmount, target, parenthesesAllowed, reUseAllowed, 0, shardCount);
+        Path queryFile = directory.resolve(QUERY_FILE);
+        if (!Files.exists(queryFile)) {
+            Files.write(queryFile, query);
+            return;
+        }
+        if (!Arrays.equals(Files.readAllBytes(queryFile), query))
+            throw new IllegalStateException(String.format("%s holds the shards of a different query", directory));
+    }
+
+    private Path shardFile(int shardIndex) {
+        return directory.resolve(String.format("shard-%d-of-%d.bin", shardIndex, shardCount));
+    }
+
+    private Process startShard(int shardIndex) throws IOException {
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                ShardedSearch.class.getName(),
+                SHARD_COMMAND,
+                Integer.toString(shardIndex),
+                Integer.toString(shardCount),
+                Integer.toString(numsAmount),
+                Double.toString(target),
+                Boolean.toString(parenthesesAllowed),
+                Boolean.toString(reUseAllowed),
+                shardFile(shardIndex).toString(),
+                numbers.stream().map(Object::toString).collect(Collectors.joining(","))
+        ));
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(directory.resolve(String.format("shard-%d-of-%d.log", shardIndex, shardCount)).toFile())
+                .start();
+    }
+
+    private static void runShard(String[] args) throws IOException {
+        if (args.length != 9) throw new IllegalArgumentException(String.format("Expected 9 shard arguments, got %d", args.length));
+        int shardIndex = Integer.parseInt(args[1]);
+        int shardCount = Integer.parseInt(args[2]);
+        int numsAmount = Integer.parseInt(args[3]);
+        double target = Double.parseDouble(args[4]);
+        boolean parenthesesAllowed = Boolean.parseBoolean(args[5]);
+        boolean reUseAllowed = Boolean.parseBoolean(args[6]);
+        Path shardFile = Path.of(args[7]);
+        double[] numbers = Arrays.stream(args[8].split(",")).mapToDouble(Double::parseDouble).toArray();
+
+        Collection<OperationResult> result = ArithmeticCombinations.operationCombinations(
+                DEFAULT_OPERATORS, numbers, numsAmount, target, parenthesesAllowed, reUseAllowed,
+                SearchOptions.defaults().withShard(shardIndex, shardCount)).solutions();
+
+        // Written to a temporary file first so that a crashed shard never leaves a partial result behind
+        Path temporaryFile = shardFile.resolveSibling(shardFile.getFileName() + ".tmp");
+        try (ResultSink resultSink = new BinaryResultSink(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+            for (OperationResult operationResult : result) {
+                resultSink.accept(operationResult);
+            }
+        }
+        Files.move(temporaryFile, shardFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
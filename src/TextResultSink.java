@@ -0,0 +1,33 @@
+import operators.OperationResult;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes one solution per line, formatted the same as {@link OperationResult#toString()}.
+ */
+public class TextResultSink implements ResultSink {
+    private final Writer writer;
+    private final StringBuilder builder = new StringBuilder();
+
+    public TextResultSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void accept(OperationResult operationResult) throws IOException {
+        builder.setLength(0);
+        operationResult.appendTo(builder).append(System.lineSeparator());
+        writer.append(builder);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -2,6 +2,6 @@ package operators;
 
 public class Add extends Operator {
     Add() {
-        super(Double::sum, "+", 10, true);
+        super(Double::sum, Fingerprint::add, CanonicalForm::add, "+", 0, 10, true);
     }
 }
@@ -0,0 +1,193 @@
+package operators;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Flat sum-of-products form of an expression, built bottom-up in a single pass with one rewrite rule per {@link Operator}.
+ * <p>
+ * Every term is a sign and a sorted list of factors. A factor is an original number, the reciprocal of an original number,
+ * or the reciprocal of a sum that can't be distributed. 1 and -1 aren't kept as factors, they only affect the sign,
+ * and a number multiplied by its own reciprocal cancels out. Reciprocals of sums have their common factors taken out
+ * and their leading term made positive, so that e.g. {@code 7 / ((9 - 8) / 2)} and {@code 2 / ((9 - 8) / 7)} end up
+ * with the same terms. Terms themselves never cancel, so the originals of an expression are all still present.
+ */
+final class CanonicalForm implements Comparable<CanonicalForm> {
+    private static final CanonicalForm ONE = new CanonicalForm(List.of(new Term(false, List.of())));
+
+    private static final Comparator<List<Factor>> FACTORS_ORDER = (left, right) -> {
+        for (int i = 0; i < Math.min(left.size(), right.size()); i++) {
+            int comparison = left.get(i).compareTo(right.get(i));
+            if (comparison != 0) return comparison;
+        }
+        return Integer.compare(left.size(), right.size());
+    };
+
+    private final List<Term> terms;
+
+    private CanonicalForm(List<Term> terms) {
+        this.terms = terms;
+    }
+
+    private static CanonicalForm sorted(List<Term> terms) {
+        List<Term> result = new ArrayList<>(terms);
+        result.sort(null);
+        return new CanonicalForm(List.copyOf(result));
+    }
+
+    private static CanonicalForm of(Factor factor) {
+        return new CanonicalForm(List.of(new Term(false, List.of(factor))));
+    }
+
+    enum Kind {
+        // Reciprocals come first so that 2 / 7 is written as 1 / 7 * 2
+        RECIPROCAL, RECIPROCAL_SUM, ORIGINAL
+    }
+
+    /**
+     * @param value       the original number for {@link Kind#ORIGINAL} and {@link Kind#RECIPROCAL}
+     * @param denominator the sum for {@link Kind#RECIPROCAL_SUM}
+     */
+    record Factor(Kind kind, double value, CanonicalForm denominator) implements Comparable<Factor> {
+        Factor reciprocal() {
+            if (kind == Kind.ORIGINAL) return new Factor(Kind.RECIPROCAL, value, null);
+            if (kind == Kind.RECIPROCAL) return new Factor(Kind.ORIGINAL, value, null);
+            throw new IllegalStateException("The reciprocal of a sum is a sum, not a factor!");
+        }
+
+        @Override
+        public int compareTo(Factor o) {
+            int comparison = kind.compareTo(o.kind);
+            if (comparison != 0) return comparison;
+            comparison = Double.compare(value, o.value);
+            if (comparison != 0 || kind != Kind.RECIPROCAL_SUM) return comparison;
+            return denominator.compareTo(o.denominator);
+        }
+    }
+
+    record Term(boolean negative, List<Factor> factors) implements Comparable<Term> {
+        Term negated() {
+            return new Term(!negative, factors);
+        }
+
+        Term times(Term other) {
+            List<Factor> result = new ArrayList<>(factors);
+            for (Factor factor : other.factors) {
+                if (factor.kind == Kind.RECIPROCAL_SUM || !result.remove(factor.reciprocal())) result.add(factor);
+            }
+            result.sort(null);
+            return new Term(negative != other.negative, List.copyOf(result));
+        }
+
+        @Override
+        public int compareTo(Term o) {
+            int comparison = FACTORS_ORDER.compare(factors, o.factors);
+            if (comparison != 0) return comparison;
+            return Boolean.compare(negative, o.negative);
+        }
+    }
+
+    static CanonicalForm ofLeaf(double value) {
+        if (Utils.doubleEquals(value, 1)) return ONE;
+        if (Utils.doubleEquals(value, -1)) return ONE.negated();
+        return of(new Factor(Kind.ORIGINAL, value, null));
+    }
+
+    static CanonicalForm add(CanonicalForm left, CanonicalForm right) {
+        List<Term> result = new ArrayList<>(left.terms);
+        result.addAll(right.terms);
+        return sorted(result);
+    }
+
+    static CanonicalForm subtract(CanonicalForm left, CanonicalForm right) {
+        return add(left, right.negated());
+    }
+
+    static CanonicalForm multiply(CanonicalForm left, CanonicalForm right) {
+        List<Term> result = new ArrayList<>(left.terms.size() * right.terms.size());
+        for (Term leftTerm : left.terms) {
+            for (Term rightTerm : right.terms) {
+                result.add(leftTerm.times(rightTerm));
+            }
+        }
+        return sorted(result);
+    }
+
+    static CanonicalForm divide(CanonicalForm left, CanonicalForm right) {
+        return multiply(left, right.reciprocal());
+    }
+
+    private CanonicalForm negated() {
+        return sorted(terms.stream().map(Term::negated).toList());
+    }
+
+    private CanonicalForm reciprocal() {
+        List<Factor> common = new ArrayList<>(terms.get(0).factors);
+        for (Term term : terms) {
+            List<Factor> remaining = new ArrayList<>(term.factors);
+            common.removeIf(factor -> !remaining.remove(factor));
+        }
+
+        CanonicalForm result = ONE;
+        for (Factor factor : common) {
+            result = multiply(result, factor.kind == Kind.RECIPROCAL_SUM ? factor.denominator : of(factor.reciprocal()));
+        }
+
+        List<Term> reduced = new ArrayList<>();
+        for (Term term : terms) {
+            List<Factor> factors = new ArrayList<>(term.factors);
+            common.forEach(factors::remove);
+            reduced.add(new Term(term.negative, List.copyOf(factors)));
+        }
+        reduced.sort(null);
+        boolean negative = reduced.get(0).negative;
+        if (negative) result = result.negated();
+        if (reduced.size() == 1) return result;
+
+        CanonicalForm denominator = negative ? new CanonicalForm(List.copyOf(reduced)).negated() : new CanonicalForm(List.copyOf(reduced));
+        return multiply(result, of(new Factor(Kind.RECIPROCAL_SUM, 0, denominator)));
+    }
+
+    OperationResult toOperationResult() {
+        OperationResult result = null;
+        for (Term term : terms) {
+            OperationResult termResult = toOperationResult(term);
+            result = result == null ? termResult : result.apply(Operators.ADD, termResult);
+        }
+        return result;
+    }
+
+    private static OperationResult toOperationResult(Term term) {
+        OperationResult result = term.negative ? new OperationResult(-1) : null;
+        for (Factor factor : term.factors) {
+            OperationResult factorResult = switch (factor.kind) {
+                case ORIGINAL -> new OperationResult(factor.value);
+                case RECIPROCAL -> new OperationResult(1).apply(Operators.DIV, factor.value);
+                case RECIPROCAL_SUM -> new OperationResult(1).apply(Operators.DIV, factor.denominator.toOperationResult());
+            };
+            result = result == null ? factorResult : result.apply(Operators.MUL, factorResult);
+        }
+        return result == null ? new OperationResult(1) : result;
+    }
+
+    @Override
+    public int compareTo(CanonicalForm o) {
+        for (int i = 0; i < Math.min(terms.size(), o.terms.size()); i++) {
+            int comparison = terms.get(i).compareTo(o.terms.get(i));
+            if (comparison != 0) return comparison;
+        }
+        return Integer.compare(terms.size(), o.terms.size());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof CanonicalForm other)) return false;
+        return terms.equals(other.terms);
+    }
+
+    @Override
+    public int hashCode() {
+        return terms.hashCode();
+    }
+}
@@ -0,0 +1,115 @@
+package operators;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Algebraic fingerprint of an expression: the expression evaluated with its original numbers bound to
+ * pseudo-random values in the prime field of order 2^61 - 1, over several independent rounds.
+ * Two expressions that are algebraically equivalent always have the same fingerprint, and two that aren't
+ * collide only with negligible probability, so fingerprints can be used directly as hash keys.
+ * <p>
+ * The numbers 1 and -1 are bound to themselves rather than to random values, so that e.g. {@code 5 * 1}
+ * and {@code 5} share a fingerprint, the same way they share a normalized form.
+ * <p>
+ * The seed is random per process unless the {@code fingerprint.seed} system property is set,
+ * which is needed when fingerprints from different processes are compared.
+ */
+public final class Fingerprint {
+    static final long PRIME = (1L << 61) - 1;
+    static final int ROUNDS = 3;
+    public static final long SEED = Long.getLong("fingerprint.seed", new SecureRandom().nextLong());
+
+    private final long[] residues;
+    private final int hash;
+
+    private Fingerprint(long[] residues) {
+        this.residues = residues;
+        this.hash = Arrays.hashCode(residues);
+    }
+
+    static Fingerprint ofLeaf(double value) {
+        long[] residues = new long[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            if (Utils.doubleEquals(value, 1)) {
+                residues[round] = 1;
+            } else if (Utils.doubleEquals(value, -1)) {
+                residues[round] = PRIME - 1;
+            } else {
+                residues[round] = mix((SEED + round * 0x9E3779B97F4A7C15L) ^ Double.doubleToLongBits(value)) % PRIME;
+            }
+        }
+        return new Fingerprint(residues);
+    }
+
+    Fingerprint combine(Operator operator, Fingerprint other) {
+        long[] result = new long[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            result[round] = operator.applyInField(residues[round], other.residues[round]);
+        }
+        return new Fingerprint(result);
+    }
+
+    /**
+     * @return a single 64-bit digest of all rounds, for compact storage where the full fingerprint is too big
+     */
+    public long toLong() {
+        long result = 0;
+        for (long residue : residues) {
+            result = mix(result ^ residue);
+        }
+        return result;
+    }
+
+    static long add(long left, long right) {
+        long result = left + right;
+        return result >= PRIME ? result - PRIME : result;
+    }
+
+    static long subtract(long left, long right) {
+        long result = left - right;
+        return result < 0 ? result + PRIME : result;
+    }
+
+    static long multiply(long left, long right) {
+        long low = left * right;
+        long high = Math.multiplyHigh(left, right);
+        long result = (low & PRIME) + ((low >>> 61) | (high << 3));
+        return result >= PRIME ? result - PRIME : result;
+    }
+
+    /**
+     * Division by zero has no meaning in the field either, it's mapped to zero.
+     * Such expressions never compare equal on their real values anyway.
+     */
+    static long divide(long left, long right) {
+        return multiply(left, inverse(right));
+    }
+
+    private static long inverse(long value) {
+        long result = 1;
+        long base = value;
+        for (long exponent = PRIME - 2; exponent > 0; exponent >>>= 1) {
+            if ((exponent & 1) == 1) result = multiply(result, base);
+            base = multiply(base, base);
+        }
+        return result;
+    }
+
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (z ^ (z >>> 31)) >>> 1;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Fingerprint other)) return false;
+        return hash == other.hash && Arrays.equals(residues, other.residues);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
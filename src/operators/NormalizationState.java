@@ -1,5 +0,0 @@
-package operators;
-
-class NormalizationState {
-    int divideCounter = 0;
-}
@@ -7,15 +7,23 @@ import java.util.Set;
 public class OperationResult implements Comparable<OperationResult> {
     public final OperationResult left;
     public final OperationResult right;
-    public final Double resultValue;
+    public final double resultValue;
     public final Operator operator;
+    private final int length;
+    private final long usedOriginalsDigest;
     boolean isNormalized = false;
+    private Fingerprint fingerprint = null;
+    private CanonicalForm canonicalForm = null;
+    private double[] usedOriginalValues = null;
 
     public OperationResult(double value) {
         this.left = null;
         operator = null;
         this.right = null;
         resultValue = value;
+        length = 1;
+        // Small whole numbers only have their top bits set, the offset makes sure every bit ends up mixed
+        usedOriginalsDigest = Fingerprint.mix(Double.doubleToLongBits(value) + 0x9E3779B97F4A7C15L);
         isNormalized = true;
     }
 
@@ -24,6 +32,8 @@ public class OperationResult implements Comparable<OperationResult> {
         this.operator = operator;
         this.right = right;
         resultValue = operator.applyAsDouble(left.resultValue, right.resultValue);
+        length = left.length + right.length;
+        usedOriginalsDigest = left.usedOriginalsDigest + right.usedOriginalsDigest;
     }
 
     public boolean isFirst() {
@@ -34,8 +44,7 @@ public class OperationResult implements Comparable<OperationResult> {
     }
 
     public int length() {
-        if (isFirst()) return 1;
-        return left.length() + right.length();
+        return length;
     }
 
     public OperationResult apply(Operator operator, double other) {
@@ -46,42 +55,63 @@ public class OperationResult implements Comparable<OperationResult> {
         return operator.apply(this, other);
     }
 
-    public int getRank() {
-        return toString().hashCode();
+    public OperationResult getNormalized() {
+        if (isNormalized) return this;
+        return getCanonicalForm().toOperationResult();
     }
 
-    public OperationResult getNormalized() {
-        return getNormalized(new NormalizationState());
+    CanonicalForm getCanonicalForm() {
+        if (Objects.isNull(canonicalForm)) {
+            canonicalForm = isFirst() ? CanonicalForm.ofLeaf(resultValue) : operator.rewrite(left.getCanonicalForm(), right.getCanonicalForm());
+        }
+        return canonicalForm;
     }
 
-    OperationResult getNormalized(NormalizationState normalizationState) {
-        if (isNormalized) return this;
-        return operator.normalize(this, normalizationState);
+    public Fingerprint getFingerprint() {
+        if (Objects.isNull(fingerprint)) {
+            fingerprint = isFirst() ? Fingerprint.ofLeaf(resultValue) : left.getFingerprint().combine(operator, right.getFingerprint());
+        }
+        return fingerprint;
     }
 
     public boolean isEquivalent(OperationResult other) {
+        return isEquivalent(other, false);
+    }
+
+    /**
+     * @param confirmWithNormalization also require the normalized forms to match,
+     *                                 ruling out the negligible chance of a fingerprint collision
+     */
+    public boolean isEquivalent(OperationResult other, boolean confirmWithNormalization) {
         if (Objects.isNull(other)) return false;
         if (!Utils.doubleEquals(this.resultValue, other.resultValue)) return false;
-        if (this.isFirst() && other.isFirst()) return true;
-        if (!this.isFirst() && !other.isFirst()
-                && this.operator.equals(other.operator)
-                && this.left.isEquivalent(other.left) && this.right.isEquivalent(other.right))
-            return true;
-        return this.getNormalized().toString().equals(other.getNormalized().toString());
+        if (!this.getFingerprint().equals(other.getFingerprint())) return false;
+        return !confirmWithNormalization || isEquivalentByNormalization(other);
+    }
+
+    private boolean isEquivalentByNormalization(OperationResult other) {
+        return this.getCanonicalForm().equals(other.getCanonicalForm());
     }
 
     @Override
     public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    /**
+     * Appends the same text as {@link #toString()} without building intermediate strings for subexpressions.
+     */
+    public StringBuilder appendTo(StringBuilder builder) {
         if (isFirst()) {
             if (Utils.doubleIsInteger(resultValue)) {
-                return Integer.toString(resultValue.intValue());
+                return builder.append((int) resultValue);
             }
-            return resultValue.toString();
+            return builder.append(resultValue);
         }
-        return String.format("%s %s %s",
-                wrapInParenthesesIfNeeded(left, true),
-                operator.displayString,
-                wrapInParenthesesIfNeeded(right, false));
+        appendWrappedInParenthesesIfNeeded(builder, left, true);
+        builder.append(' ').append(operator.displayString).append(' ');
+        appendWrappedInParenthesesIfNeeded(builder, right, false);
+        return builder;
     }
 
     private boolean shouldWrapInParentheses(OperationResult operationResult, boolean isLeft) {
@@ -91,10 +121,12 @@ public class OperationResult implements Comparable<OperationResult> {
                 (isLeft && operationResult.operator.priority == this.operator.priority));
     }
 
-    private String wrapInParenthesesIfNeeded(OperationResult operationResult, boolean isLeft) {
-        if (shouldWrapInParentheses(operationResult, isLeft))
-            return Utils.wrapInParentheses(operationResult.toString());
-        return operationResult.toString();
+    private void appendWrappedInParenthesesIfNeeded(StringBuilder builder, OperationResult operationResult, boolean isLeft) {
+        if (shouldWrapInParentheses(operationResult, isLeft)) {
+            operationResult.appendTo(builder.append('(')).append(')');
+        } else {
+            operationResult.appendTo(builder);
+        }
     }
 
     public HashMap<Double, Integer> usedOriginalsWithCounts() {
@@ -116,20 +148,83 @@ public class OperationResult implements Comparable<OperationResult> {
         return usedOriginalsWithCounts().keySet();
     }
 
+    /**
+     * @return the original numbers used, including repeats, in ascending order
+     */
+    public double[] usedOriginalValues() {
+        if (Objects.isNull(usedOriginalValues)) {
+            if (isFirst()) {
+                usedOriginalValues = new double[]{resultValue};
+            } else {
+                double[] leftValues = left.usedOriginalValues();
+                double[] rightValues = right.usedOriginalValues();
+                double[] result = new double[leftValues.length + rightValues.length];
+                int i = 0, j = 0, k = 0;
+                while (i < leftValues.length && j < rightValues.length) {
+                    result[k++] = Double.compare(leftValues[i], rightValues[j]) <= 0 ? leftValues[i++] : rightValues[j++];
+                }
+                while (i < leftValues.length) result[k++] = leftValues[i++];
+                while (j < rightValues.length) result[k++] = rightValues[j++];
+                usedOriginalValues = result;
+            }
+        }
+        return usedOriginalValues;
+    }
+
+    /**
+     * @return a digest of the original numbers used, including repeats, that doesn't depend on their order
+     * or on the fingerprint seed, so it's the same in every process
+     */
+    public long usedOriginalsDigest() {
+        return usedOriginalsDigest;
+    }
+
+    /**
+     * Same as {@code !Collections.disjoint(usedOriginals(), other.usedOriginals())}, without boxing.
+     */
+    public boolean sharesOriginalsWith(OperationResult other) {
+        double[] values = usedOriginalValues();
+        double[] otherValues = other.usedOriginalValues();
+        int i = 0, j = 0;
+        while (i < values.length && j < otherValues.length) {
+            int comparison = Double.compare(values[i], otherValues[j]);
+            if (comparison == 0) return true;
+            if (comparison < 0) i++;
+            else j++;
+        }
+        return false;
+    }
+
     public boolean containsParentheses() {
-        return toString().contains("(") || toString().contains(")");
+        if (isFirst()) return false;
+        return shouldWrapInParentheses(left, true) || shouldWrapInParentheses(right, false)
+                || left.containsParentheses() || right.containsParentheses();
     }
 
+    /**
+     * Structural order: originals first, then by operator, value, left and right operand.
+     * Structurally identical expressions compare as equal.
+     */
     @Override
     public int compareTo(OperationResult o) {
         if (Objects.isNull(o))
             throw new IllegalArgumentException(String.format("Can't compare %s to null!", this.getClass().getName()));
-        return Integer.compare(getRank(), o.getRank());
+        if (this == o) return 0;
+        boolean isFirst = isFirst();
+        if (isFirst != o.isFirst()) return isFirst ? -1 : 1;
+        if (isFirst) return Double.compare(resultValue, o.resultValue);
+        int comparison = Integer.compare(operator.ordinal, o.operator.ordinal);
+        if (comparison != 0) return comparison;
+        comparison = Double.compare(resultValue, o.resultValue);
+        if (comparison != 0) return comparison;
+        comparison = left.compareTo(o.left);
+        if (comparison != 0) return comparison;
+        return right.compareTo(o.right);
     }
 
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof OperationResult other)) return false;
-        return resultValue.equals(other.resultValue);
+        return Double.compare(resultValue, other.resultValue) == 0;
     }
 }
@@ -9,4 +9,11 @@ public class Operators {
     public final static Divide DIV = new Divide();
 
     public final static List<Operator> DEFAULT_OPERATORS = List.of(ADD, SUB, MUL, DIV);
+
+    public static Operator fromOrdinal(int ordinal) {
+        for (Operator operator : DEFAULT_OPERATORS) {
+            if (operator.ordinal == ordinal) return operator;
+        }
+        throw new IllegalArgumentException(String.format("No operator with ordinal %d", ordinal));
+    }
 }
@@ -10,8 +10,4 @@ public class Utils {
     public static boolean doubleIsInteger(double d) {
         return doubleEquals(Math.ceil(d), Math.floor(d));
     }
-
-    public static String wrapInParentheses(String string) {
-        return String.format("(%s)", string);
-    }
 }
@@ -1,15 +1,66 @@
+import operators.Fingerprint;
 import operators.OperationResult;
 import org.junit.jupiter.api.Test;
 import org.opentest4j.AssertionFailedError;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static operators.Operators.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 class ArithmeticCombinationsTest {
+    @FunctionalInterface
+    private interface Search {
+        Collection<OperationResult> operationCombinations(double[] numbers, int numsAmount, double target, boolean parenthesesAllowed, boolean reUseAllowed) throws InterruptedException;
+    }
+
+    private static Set<Fingerprint> fingerprints(Collection<OperationResult> expressions) {
+        return expressions.stream().map(OperationResult::getFingerprint).collect(Collectors.toSet());
+    }
+
+    /**
+     * Compares the solutions of {@code search} with {@link ArithmeticCombinations#operationCombinations} on inputs with
+     * and without 1 and reuse. Unless {@code exact}, the level-by-level search may also keep solutions equivalent to
+     * an expression of fewer numbers, which it does when it happens to build them before the shorter one.
+     */
+    private void assertMatchesSearch(Search search, boolean exact) throws InterruptedException {
+        double[][] inputs = {{2, 3, 4, 5, 7, 8, 9, 44, 55}, {1, 2, 3, 4, 6}, {2, 3, 5, 7}};
+        for (double[] numbers : inputs) {
+            boolean reUseAllowed = numbers.length == 4;
+            for (double target : new double[]{14, 1}) {
+                for (boolean parenthesesAllowed : new boolean[]{true, false}) {
+                    Collection<OperationResult> expected = ArithmeticCombinations.operationCombinations(DEFAULT_OPERATORS, numbers, 4, target, parenthesesAllowed, reUseAllowed);
+                    Collection<OperationResult> actual = search.operationCombinations(numbers, 4, target, parenthesesAllowed, reUseAllowed);
+                    Set<Fingerprint> actualFingerprints = fingerprints(actual);
+                    assertEquals(actual.size(), actualFingerprints.size());
+                    if (exact) {
+                        assertEquals(fingerprints(expected), actualFingerprints);
+                        continue;
+                    }
+
+                    Set<Fingerprint> shorterSolutions = new HashSet<>();
+                    for (int numsAmount = 1; numsAmount < 4; numsAmount++) {
+                        shorterSolutions.addAll(fingerprints(ArithmeticCombinations.operationCombinations(DEFAULT_OPERATORS, numbers, numsAmount, target, parenthesesAllowed, reUseAllowed)));
+                    }
+                    Set<Fingerprint> onlyExpected = fingerprints(expected);
+                    assertTrue(onlyExpected.containsAll(actualFingerprints));
+                    onlyExpected.removeAll(actualFingerprints);
+                    assertTrue(shorterSolutions.containsAll(onlyExpected));
+                }
+            }
+        }
+    }
+
     private boolean containsEquivalentPattern(Collection<OperationResult> expressions, OperationResult pattern) {
         return expressions.stream().anyMatch(or -> or.isEquivalent(pattern));
     }
@@ -83,4 +134,164 @@ class ArithmeticCombinationsTest {
 
         assertEquals(71, result.size());
     }
+
+    @Test
+    public void testShardsCoverAllSolutions() {
+        double[] numbers = {2, 3, 4, 5, 7, 8, 9, 44, 55};
+        Set<Fingerprint> expected = fingerprints(ArithmeticCombinations.operationCombinations(DEFAULT_OPERATORS, numbers, 4, 14, true, false));
+
+        for (int shardCount : new int[]{3, 4, 8}) {
+            Set<Fingerprint> actual = new HashSet<>();
+            for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+                Collection<OperationResult> shard = ArithmeticCombinations.operationCombinations(
+                        DEFAULT_OPERATORS,
+                        numbers,
+                        4,
+                        14,
+                        true,
+                        false,
+                        SearchOptions.defaults().withShard(shardIndex, shardCount)
+                ).solutions();
+                assertFalse(shard.isEmpty());
+                actual.addAll(fingerprints(shard));
+            }
+            assertEquals(expected, actual);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> SearchOptions.defaults().withShard(3, 3));
+    }
+
+    @Test
+    public void testCancelledSearchIsIncomplete() {
+        double[] numbers = {2, 3, 4, 5, 7, 8, 9, 44, 55};
+        CancellationToken cancellationToken = CancellationToken.create();
+        cancellationToken.cancel();
+
+        SearchResult result = ArithmeticCombinations.operationCombinations(
+                DEFAULT_OPERATORS,
+                numbers,
+                4,
+                14,
+                true,
+                false,
+                SearchOptions.defaults().withCancellationToken(cancellationToken)
+        );
+
+        assertFalse(result.complete());
+        assertTrue(result.solutions().isEmpty());
+    }
+
+    @Test
+    public void testNoneIsNeverCancelled() {
+        assertThrows(UnsupportedOperationException.class, () -> CancellationToken.none().cancel());
+        assertFalse(CancellationToken.none().isCancelled());
+    }
+
+    @Test
+    public void testProgressReachesEveryLevel() {
+        double[] numbers = {2, 3, 4, 5, 7, 8, 9, 44, 55};
+        List<Integer> finishedLevels = new ArrayList<>();
+
+        SearchResult result = ArithmeticCombinations.operationCombinations(
+                DEFAULT_OPERATORS,
+                numbers,
+                4,
+                14,
+                true,
+                false,
+                SearchOptions.defaults()
+                        .withCancellationToken(CancellationToken.withTimeout(Duration.ofMinutes(1)))
+                        .withProgressListener((level, processed, total) -> {
+                            if (processed == total) finishedLevels.add(level);
+                        })
+        );
+
+        assertTrue(result.complete());
+        assertEquals(231, result.solutions().size());
+        assertEquals(List.of(1, 2, 3), finishedLevels);
+    }
+
+    @Test
+    public void testShapeTemplatesMatchSearch() throws InterruptedException {
+        assertEquals(5 * 4 * 4 * 4, ShapeTemplates.compile(DEFAULT_OPERATORS, 4).size());
+        assertMatchesSearch((numbers, numsAmount, target, parenthesesAllowed, reUseAllowed) ->
+                ShapeTemplates.compile(DEFAULT_OPERATORS, numsAmount).solutions(numbers, target, parenthesesAllowed, reUseAllowed), false);
+    }
+
+    @Test
+    public void testTooManyShapeTemplates() {
+        assertThrows(IllegalArgumentException.class, () -> ShapeTemplates.compile(DEFAULT_OPERATORS, 10));
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws IOException {
+        double[] numbers = {2, 3, 4, 5, 7};
+        Path file = Files.createTempFile("checkpoint", ".bin");
+        Files.delete(file);
+        CancellationToken cancellationToken = CancellationToken.create();
+
+        // Saved before every partner, so the last save is in the middle of the base before the cancelled one
+        SearchResult interrupted = ArithmeticCombinations.operationCombinations(
+                DEFAULT_OPERATORS, numbers, 3, 14, true, false,
+                SearchOptions.defaults()
+                        .withCancellationToken(cancellationToken)
+                        .withProgressListener((level, processed, total) -> {
+                            if (level == 2 && processed == total / 2) cancellationToken.cancel();
+                        })
+                        .withCheckpoint(SearchCheckpoint.every(Duration.ZERO, file))
+        );
+        assertFalse(interrupted.complete());
+        assertTrue(Files.exists(file));
+
+        SearchResult resumed = ArithmeticCombinations.operationCombinations(
+                DEFAULT_OPERATORS, numbers, 3, 14, true, false,
+                SearchOptions.defaults().withCheckpoint(SearchCheckpoint.every(Duration.ofHours(1), file))
+        );
+        assertTrue(resumed.complete());
+        assertEquals(fingerprints(ArithmeticCombinations.operationCombinations(DEFAULT_OPERATORS, numbers, 3, 14, true, false)), fingerprints(resumed.solutions()));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testDepthFirstSearchMatchesSearch() throws InterruptedException {
+        assertMatchesSearch((numbers, numsAmount, target, parenthesesAllowed, reUseAllowed) ->
+                DepthFirstSearch.operationCombinations(DEFAULT_OPERATORS, numbers, numsAmount, target, parenthesesAllowed, reUseAllowed), false);
+    }
+
+    @Test
+    public void testPipelineSearchMatchesSearch() throws InterruptedException {
+        PipelineSearch pipelineSearch = new PipelineSearch(4, 4, 4, 2);
+
+        assertMatchesSearch((numbers, numsAmount, target, parenthesesAllowed, reUseAllowed) ->
+                pipelineSearch.operationCombinations(DEFAULT_OPERATORS, numbers, numsAmount, target, parenthesesAllowed, reUseAllowed), true);
+        assertEquals(pipelineSearch.getMetrics().generatedCandidates.sum(), pipelineSearch.getMetrics().keyedCandidates.sum());
+        assertTrue(pipelineSearch.getMetrics().inLevelCandidates.sum() > 0);
+    }
+
+    @Test
+    public void testInterruptedPipelineSearchStops() throws InterruptedException {
+        double[] numbers = {2, 3, 4, 5, 7, 8, 9, 44, 55};
+        List<Throwable> thrown = new ArrayList<>();
+        Thread caller = new Thread(() -> {
+            try {
+                new PipelineSearch(2, 2, 64, 4).operationCombinations(DEFAULT_OPERATORS, numbers, 6, 14, true, false);
+            } catch (Throwable e) {
+                thrown.add(e);
+            }
+        });
+
+        caller.start();
+        Thread.sleep(200);
+        caller.interrupt();
+        caller.join(Duration.ofSeconds(10).toMillis());
+
+        assertFalse(caller.isAlive());
+        assertEquals(1, thrown.size());
+        assertTrue(thrown.get(0) instanceof InterruptedException);
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (Thread.getAllStackTraces().keySet().stream().anyMatch(thread -> thread.getName().equals("pipeline-search-stage")) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(Thread.getAllStackTraces().keySet().stream().noneMatch(thread -> thread.getName().equals("pipeline-search-stage")));
+    }
 }
\ No newline at end of file
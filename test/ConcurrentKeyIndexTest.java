@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentKeyIndexTest {
+    @Test
+    public void add() {
+        ConcurrentKeyIndex keyIndex = new ConcurrentKeyIndex(4);
+
+        assertTrue(keyIndex.add(42));
+        assertTrue(keyIndex.add(0));
+        assertFalse(keyIndex.add(42));
+        assertFalse(keyIndex.add(0));
+        assertTrue(keyIndex.contains(42));
+        assertFalse(keyIndex.contains(7));
+        assertEquals(2, keyIndex.size());
+    }
+
+    @Test
+    public void zeroDoesNotCollideWithOtherKeys() {
+        ConcurrentKeyIndex keyIndex = new ConcurrentKeyIndex(4);
+
+        assertFalse(keyIndex.contains(0));
+        assertTrue(keyIndex.add(0x9E3779B97F4A7C15L));
+        assertFalse(keyIndex.contains(0));
+        assertTrue(keyIndex.add(0));
+        assertTrue(keyIndex.contains(0x9E3779B97F4A7C15L));
+    }
+
+    @Test
+    public void resized() {
+        ConcurrentKeyIndex keyIndex = new ConcurrentKeyIndex(4);
+        for (int i = 0; i < 3; i++) {
+            keyIndex.add(i * 31L);
+        }
+        assertTrue(keyIndex.isCrowded());
+
+        ConcurrentKeyIndex resized = keyIndex.resized(64);
+
+        assertEquals(64, resized.capacity());
+        assertEquals(3, resized.size());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(resized.contains(i * 31L));
+        }
+    }
+
+    @Test
+    public void withRoomForOneMore() {
+        ConcurrentKeyIndex keyIndex = new ConcurrentKeyIndex(4);
+        keyIndex.add(1);
+        assertSame(keyIndex, keyIndex.withRoomForOneMore());
+
+        keyIndex.add(2);
+        keyIndex.add(3);
+        ConcurrentKeyIndex grown = keyIndex.withRoomForOneMore();
+        assertEquals(16, grown.capacity());
+        assertEquals(3, grown.size());
+        assertFalse(grown.isCrowded());
+    }
+
+    @Test
+    public void rejectsCapacityAboveMaximum() {
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentKeyIndex(1L << 41));
+    }
+
+    @Test
+    public void concurrentInsertsStoreEveryKeyOnce() throws InterruptedException {
+        ConcurrentKeyIndex keyIndex = new ConcurrentKeyIndex(1 << 16);
+        AtomicInteger inserted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    if (keyIndex.add(i * 1000003L)) inserted.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(10000, inserted.get());
+        assertEquals(10000, keyIndex.size());
+        assertTrue(keyIndex.contains(5 * 1000003L));
+    }
+}
@@ -1,11 +1,16 @@
+import operators.Fingerprint;
 import operators.OperationResult;
+import operators.Operator;
 import operators.Utils;
 import org.junit.jupiter.api.Test;
 import org.opentest4j.AssertionFailedError;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static operators.Operators.*;
 
@@ -22,7 +27,7 @@ class EquivalentAssertionFailedError extends AssertionFailedError {
 
 public class OperatorTest {
     private void assertEquivalent(OperationResult a, OperationResult b) {
-        if (!a.isEquivalent(b)) throw new EquivalentAssertionFailedError(a, b);
+        if (!a.isEquivalent(b, true)) throw new EquivalentAssertionFailedError(a, b);
     }
 
     private void assertNormalizedFormContainsOriginalNumbers(OperationResult original) {
@@ -274,7 +279,32 @@ public class OperatorTest {
         assertEquivalenceAndNormalization(a, b);
     }
 
-    // TODO: Test for false positives
+    @Test
+    public void fingerprintNoFalsePositives() {
+        OperationResult two = new OperationResult(2);
+        OperationResult three = new OperationResult(3);
+        OperationResult five = new OperationResult(5);
+
+        assertFalse(two.apply(SUB, three).isEquivalent(three.apply(SUB, two)));  // 2 - 3, 3 - 2
+        assertFalse(two.apply(DIV, three).isEquivalent(three.apply(DIV, two)));  // 2 / 3, 3 / 2
+        assertFalse(two.apply(ADD, three).isEquivalent(five));  // 2 + 3, 5
+        assertNotEquals(two.apply(MUL, three).getFingerprint(), two.apply(ADD, three).getFingerprint());
+        assertEquals(two.apply(MUL, three).getFingerprint(), three.apply(MUL, two).getFingerprint());
+    }
+
+    @Test
+    public void structuralOrder() {
+        OperationResult a = new OperationResult(2).apply(SUB, 3).apply(MUL, 5);  // (2 - 3) * 5
+        OperationResult b = new OperationResult(2).apply(SUB, 3).apply(MUL, 5);  // (2 - 3) * 5
+        OperationResult c = new OperationResult(3).apply(SUB, 2).apply(MUL, 5);  // (3 - 2) * 5
+        OperationResult d = new OperationResult(2).apply(ADD, 3);  // 2 + 3
+
+        assertEquals(0, a.compareTo(b));
+        assertEquals(-Integer.signum(a.compareTo(c)), Integer.signum(c.compareTo(a)));
+        assertTrue(a.compareTo(c) < 0);
+        assertTrue(d.compareTo(a) < 0);
+        assertTrue(new OperationResult(5).compareTo(d) < 0);
+    }
 
     @Test
     public void divisionBasic() {
@@ -297,4 +327,96 @@ public class OperatorTest {
 
         assertEquivalenceAndNormalization(a, b, c);
     }
+
+    @Test
+    public void reciprocalCancellation() {
+        OperationResult two = new OperationResult(2);
+        OperationResult three = new OperationResult(3);
+        OperationResult seven = new OperationResult(7);
+
+        OperationResult a = seven.apply(MUL, new OperationResult(1).apply(DIV, seven));  // 7 * (1 / 7)
+        OperationResult b = two.apply(MUL, three).apply(DIV, seven).apply(MUL, seven);  // 2 * 3 / 7 * 7
+        OperationResult c = two.apply(MUL, three);  // 2 * 3
+
+        // Cancelled factors are left out of the normalized form, so it has fewer original numbers
+        assertNormalizationIsReflexive(a);
+        assertNormalizationIsReflexive(b);
+        assertEquals("1", a.getNormalized().toString());
+        assertEquivalent(b, c);
+        assertEquals(c.getNormalized().toString(), b.getNormalized().toString());
+    }
+
+    @Test
+    public void reciprocalSumCommonFactor() {
+        OperationResult two = new OperationResult(2);
+        OperationResult three = new OperationResult(3);
+        OperationResult five = new OperationResult(5);
+        OperationResult seven = new OperationResult(7);
+
+        OperationResult a = seven.apply(DIV, two.apply(MUL, three).apply(ADD, two.apply(MUL, five)));  // 7 / (2 * 3 + 2 * 5)
+        OperationResult b = seven.apply(DIV, two).apply(DIV, three.apply(ADD, five));  // 7 / 2 / (3 + 5)
+
+        assertNormalizationIsReflexive(a);
+        assertEquivalent(a, b);
+        // The 2 is taken out of the sum, which only keeps 3 + 5
+        assertEquals("1 / 2 * (1 / (3 + 5)) * 7", a.getNormalized().toString());
+    }
+
+    @Test
+    public void reciprocalSumLeadingTermPositive() {
+        OperationResult two = new OperationResult(2);
+        OperationResult five = new OperationResult(5);
+        OperationResult seven = new OperationResult(7);
+
+        OperationResult a = seven.apply(DIV, five.apply(SUB, two));  // 7 / (5 - 2)
+        OperationResult b = new OperationResult(-1).apply(MUL, seven.apply(DIV, two.apply(SUB, five)));  // -1 * (7 / (2 - 5))
+
+        assertEquivalenceAndNormalization(a, b);
+        // The sign moves out of the sum so that its leading term, 2, is positive
+        assertEquals("-1 * (1 / (2 + -1 * 5)) * 7", a.getNormalized().toString());
+        assertFalse(a.isEquivalent(seven.apply(DIV, two.apply(SUB, five)), true));
+    }
+
+    private static List<OperationResult> allExpressions(double[] numbers, int mask, Map<Integer, List<OperationResult>> expressionsByMask) {
+        if (expressionsByMask.containsKey(mask)) return expressionsByMask.get(mask);
+        List<OperationResult> result = new ArrayList<>();
+        if (Integer.bitCount(mask) == 1) {
+            result.add(new OperationResult(numbers[Integer.numberOfTrailingZeros(mask)]));
+        }
+        for (int leftMask = (mask - 1) & mask; leftMask > 0; leftMask = (leftMask - 1) & mask) {
+            for (OperationResult left : allExpressions(numbers, leftMask, expressionsByMask)) {
+                for (OperationResult right : allExpressions(numbers, mask ^ leftMask, expressionsByMask)) {
+                    for (Operator operator : DEFAULT_OPERATORS) {
+                        result.add(left.apply(operator, right));
+                    }
+                }
+            }
+        }
+        expressionsByMask.put(mask, result);
+        return result;
+    }
+
+    /**
+     * Every expression of four different numbers must have the same normalized form as exactly those with its fingerprint.
+     * Terms never cancel in the normalized form, so this doesn't hold for inputs with both 1 and -1, where 1 + -1 is 0.
+     */
+    @Test
+    public void canonicalFormsAgreeWithFingerprints() {
+        double[] numbers = {1, 2, 3, 5, 7};
+        Map<Integer, List<OperationResult>> expressionsByMask = new HashMap<>();
+        Map<Fingerprint, OperationResult> byFingerprint = new HashMap<>();
+        Map<String, Fingerprint> byNormalized = new HashMap<>();
+        for (int mask = 0; mask < 1 << numbers.length; mask++) {
+            if (Integer.bitCount(mask) != 4) continue;
+            for (OperationResult expression : allExpressions(numbers, mask, expressionsByMask)) {
+                // Division by zero has no normalized form to compare
+                if (!Double.isFinite(expression.resultValue)) continue;
+                OperationResult sameFingerprint = byFingerprint.putIfAbsent(expression.getFingerprint(), expression);
+                if (sameFingerprint != null) assertEquivalent(sameFingerprint, expression);
+                Fingerprint sameNormalized = byNormalized.putIfAbsent(expression.getNormalized().toString(), expression.getFingerprint());
+                if (sameNormalized != null) assertEquals(sameNormalized, expression.getFingerprint());
+            }
+        }
+        assertEquals(byFingerprint.size(), byNormalized.size());
+    }
 }
@@ -0,0 +1,48 @@
+import operators.OperationResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static operators.Operators.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultSinkTest {
+    private final OperationResult a = new OperationResult(7).apply(DIV, new OperationResult(9).apply(SUB, 8).apply(DIV, 2));  // 7 / ((9 - 8) / 2)
+    private final OperationResult b = new OperationResult(2).apply(SUB, 44).apply(ADD, new OperationResult(7).apply(MUL, 8));  // 2 - 44 + 7 * 8
+    private final OperationResult c = new OperationResult(2.5).apply(MUL, 4);  // 2.5 * 4
+
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ResultSink resultSink = new BinaryResultSink(outputStream)) {
+            resultSink.accept(a);
+            resultSink.accept(b);
+            resultSink.accept(c);
+        }
+
+        List<String> read = new ArrayList<>();
+        try (BinaryResultReader reader = new BinaryResultReader(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            for (OperationResult operationResult = reader.read(); operationResult != null; operationResult = reader.read()) {
+                read.add(operationResult.toString());
+            }
+        }
+
+        assertEquals(List.of(a.toString(), b.toString(), c.toString()), read);
+    }
+
+    @Test
+    public void jsonLines() throws IOException {
+        StringWriter writer = new StringWriter();
+        try (ResultSink resultSink = new JsonLinesResultSink(writer)) {
+            resultSink.accept(a);
+            resultSink.accept(c);
+        }
+
+        assertEquals("{\"expression\":\"7 / ((9 - 8) / 2)\",\"value\":14.0}\n{\"expression\":\"2.5 * 4\",\"value\":10.0}\n", writer.toString());
+    }
+}
@@ -0,0 +1,56 @@
+import operators.OperationResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static operators.Operators.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedSearchTest {
+    private static Path writeShard(Path directory, String name, OperationResult... solutions) throws IOException {
+        Path file = directory.resolve(name);
+        try (ResultSink resultSink = new BinaryResultSink(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            for (OperationResult solution : solutions) {
+                resultSink.accept(solution);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void mergeKeepsFirstOfEquivalentSolutions() throws IOException {
+        Path directory = Files.createTempDirectory("shards");
+        OperationResult two = new OperationResult(2);
+        OperationResult three = new OperationResult(3);
+        OperationResult seven = new OperationResult(7);
+
+        Path first = writeShard(directory, "first.bin", two.apply(ADD, three), seven.apply(SUB, two));  // 2 + 3, 7 - 2
+        Path second = writeShard(directory, "second.bin", three.apply(ADD, two), two.apply(MUL, three));  // 3 + 2, 2 * 3
+
+        Collection<OperationResult> merged = ShardedSearch.merge(List.of(first, second));
+
+        assertEquals(List.of("2 + 3", "7 - 2", "2 * 3"), merged.stream().map(OperationResult::toString).toList());
+    }
+
+    @Test
+    public void runMatchesSearchAndRejectsOtherQueries() throws IOException, InterruptedException {
+        List<Double> numbers = Stream.of(2, 3, 4, 5, 7, 8, 9, 44, 55).map(Integer::doubleValue).toList();
+        Path directory = Files.createTempDirectory("shards");
+
+        Collection<OperationResult> result = new ShardedSearch(numbers, 4, 14, true, false, 2, directory).run();
+
+        Set<Long> expected = ArithmeticCombinations.operationCombinations(DEFAULT_OPERATORS, numbers, 4, 14, true, false)
+                .stream().map(or -> or.getFingerprint().toLong()).collect(Collectors.toSet());
+        assertEquals(expected, result.stream().map(or -> or.getFingerprint().toLong()).collect(Collectors.toSet()));
+        assertEquals(expected.size(), result.size());
+        assertThrows(IllegalStateException.class, () -> new ShardedSearch(numbers, 4, 10, true, false, 2, directory).run());
+    }
+}